@@ -0,0 +1,266 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * AsyncOutputStream hands what is written to it to another thread, which
+ * writes it to the underlying stream, so that the writer does not wait on
+ * the compression or the filesystem behind that stream.
+ *
+ * Bytes are copied into a buffer, and each full buffer is put on a
+ * bounded queue.  A worker from a shared pool drains the queue in order,
+ * one worker per stream at a time, and returns the buffers for reuse.
+ * When the queue is full the writer waits, which is counted as stalled
+ * time; a stream holds at most queueDepth + 2 buffers.  Buffers are pooled
+ * across streams, as the writers of a task are opened and closed.
+ *
+ * The first failure of the underlying stream is thrown by the next write
+ * that queues a buffer, and at the latest by close, which waits for the
+ * queue to drain and then closes the underlying stream.
+ **/
+
+class AsyncOutputStream extends OutputStream {
+
+  // Buffers kept for reuse by the streams opened later, at most.
+  private static final int MAX_POOLED_BUFFERS = 64;
+
+  private static final BlockingQueue<byte[]> pool =
+      new ArrayBlockingQueue<byte[]>(MAX_POOLED_BUFFERS);
+
+  private static ExecutorService sharedExecutor;
+
+  /**
+   * Bytes queued to be written.
+   */
+  private static final class Buffer {
+    final byte[] bytes;
+    int length;
+
+    Buffer(byte[] bytes) {
+      this.bytes = bytes;
+    }
+  }
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int bufferSize;
+  private final BlockingQueue<Buffer> full;
+  private final ConcurrentLinkedQueue<Buffer> free =
+      new ConcurrentLinkedQueue<Buffer>();
+
+  private final Runnable drainer = new Runnable() {
+    public void run() {
+      drain();
+    }
+  };
+
+  private Buffer buffer;
+  private boolean closed;
+  private long stallNanos;
+
+  // Guarded by this.
+  private boolean draining;
+  private volatile Throwable failure;
+
+  /**
+   * @param bufferSize the number of bytes handed over at a time
+   * @param queueDepth the number of full buffers that may wait to be
+   *     written before the writer has to
+   */
+  AsyncOutputStream(OutputStream out, ExecutorService executor,
+      int bufferSize, int queueDepth) {
+    this.out = out;
+    this.executor = executor;
+    this.bufferSize = bufferSize;
+    this.full = new ArrayBlockingQueue<Buffer>(Math.max(1, queueDepth));
+  }
+
+  /**
+   * @return a pool of daemon writer threads shared by every stream in this
+   *     JVM, created with the given size on first use
+   */
+  static synchronized ExecutorService getSharedExecutor(int threads) {
+    if (sharedExecutor == null) {
+      sharedExecutor = Executors.newFixedThreadPool(Math.max(1, threads),
+          new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "async-writer-" + count++);
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return sharedExecutor;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (buffer == null || bufferSize == buffer.length) {
+      nextBuffer();
+    }
+    buffer.bytes[buffer.length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (0 < len) {
+      if (buffer == null || bufferSize == buffer.length) {
+        nextBuffer();
+      }
+      int n = Math.min(len, bufferSize - buffer.length);
+      System.arraycopy(b, off, buffer.bytes, buffer.length, n);
+      buffer.length += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Buffers are only handed over when full, or on close; flush does not
+   * wait for what has been written to reach the underlying stream.
+   */
+  @Override
+  public void flush() throws IOException {
+  }
+
+  /**
+   * @return the nanoseconds the writer has waited for the queue
+   */
+  long getStallNanos() {
+    return stallNanos;
+  }
+
+  private void nextBuffer() throws IOException {
+    if (closed) {
+      throw new IOException("stream is closed");
+    }
+    if (buffer != null) {
+      submit(buffer);
+    }
+    buffer = free.poll();
+    if (buffer == null) {
+      byte[] bytes = pool.poll();
+      buffer = new Buffer(bytes != null && bytes.length == bufferSize
+          ? bytes : new byte[bufferSize]);
+    }
+    buffer.length = 0;
+  }
+
+  private void submit(Buffer filled) throws IOException {
+    checkFailure();
+    if (!full.offer(filled)) {
+      long started = System.nanoTime();
+      try {
+        full.put(filled);
+      } catch (InterruptedException ie) {
+        throw new InterruptedIOException("interrupted queueing output");
+      } finally {
+        stallNanos += System.nanoTime() - started;
+      }
+    }
+    schedule();
+  }
+
+  private void schedule() {
+    synchronized (this) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    executor.execute(drainer);
+  }
+
+  /**
+   * Writes the queued buffers until the queue is empty.  After a failure
+   * the rest are dropped, so that the writer is not left waiting.
+   */
+  private void drain() {
+    Buffer next;
+    while ((next = full.poll()) != null) {
+      if (failure == null) {
+        try {
+          out.write(next.bytes, 0, next.length);
+        } catch (Throwable t) {
+          failure = t;
+        }
+      }
+      free.add(next);
+    }
+    synchronized (this) {
+      draining = false;
+      notifyAll();
+    }
+    // A buffer queued after the last poll found no worker running.
+    if (!full.isEmpty()) {
+      schedule();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure;
+    if (t != null) {
+      throw new IOException("asynchronous write failed: " + t, t);
+    }
+  }
+
+  /**
+   * Hands over the last buffer, waits for every buffer to be written and
+   * closes the underlying stream.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (buffer != null && 0 < buffer.length) {
+        submit(buffer);
+      } else if (buffer != null) {
+        free.add(buffer);
+      }
+      buffer = null;
+      synchronized (this) {
+        while (draining || !full.isEmpty()) {
+          try {
+            wait();
+          } catch (InterruptedException ie) {
+            throw new InterruptedIOException("interrupted draining output");
+          }
+        }
+      }
+      checkFailure();
+    } finally {
+      out.close();
+      Buffer unused;
+      while ((unused = free.poll()) != null) {
+        pool.offer(unused.bytes);
+      }
+    }
+  }
+}
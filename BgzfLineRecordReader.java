@@ -0,0 +1,292 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * BgzfLineRecordReader reads the lines of one split of a BGZF file, keyed
+ * by their virtual offsets.
+ *
+ * A split starts at the first block at or after its start offset.  A line
+ * belongs to the split in which it starts, except that a line starting
+ * exactly at the first byte of a split's first block belongs to the
+ * previous split, so that each reader can find its first line without
+ * looking behind it: every split but the first skips through the first
+ * newline it reads, and reads on past its end up to and including a line
+ * that starts its boundary block.
+ **/
+
+class BgzfLineRecordReader implements RecordReader<LongWritable, Text> {
+
+  private static final int HEADER_SIZE = 18;
+  private static final int FOOTER_SIZE = 8;
+  private static final int MAX_BLOCK_SIZE = 0x10000;
+
+  private final FSDataInputStream in;
+  private final long start;
+  private final long end;
+  private final Inflater inflater = new Inflater(true);
+  private final byte[] compressed = new byte[MAX_BLOCK_SIZE];
+  private final byte[] block = new byte[MAX_BLOCK_SIZE];
+  private int blockLength;
+  private int blockPos;
+  private long blockAddress;
+  private long nextBlockAddress;
+  // The first non-empty block at or after end, once it has been read.
+  private long boundaryBlock = -1;
+  private boolean done;
+
+  private byte[] line = new byte[1024];
+  private int lineLength;
+
+  BgzfLineRecordReader(Configuration job, FileSplit split) throws IOException {
+    start = split.getStart();
+    end = start + split.getLength();
+    Path file = split.getPath();
+    FileSystem fs = file.getFileSystem(job);
+    in = fs.open(file);
+
+    nextBlockAddress = 0 == start
+        ? 0 : findBlock(in, start, fs.getFileStatus(file).getLen());
+    if (nextBlockAddress < 0) {
+      done = true;
+      return;
+    }
+    in.seek(nextBlockAddress);
+    if (!readNonEmptyBlock()) {
+      done = true;
+    } else if (0 != start) {
+      if (blockAddress >= end) {
+        // No block starts in this split.
+        done = true;
+      } else {
+        // The first line belongs to the previous split.
+        done = !readLine();
+      }
+    }
+  }
+
+  /**
+   * @return whether the file starts with a BGZF block header
+   */
+  static boolean isBgzf(FileSystem fs, Path file) throws IOException {
+    FSDataInputStream in = fs.open(file);
+    try {
+      byte[] header = new byte[HEADER_SIZE];
+      in.readFully(header);
+      return isBlockHeader(header, 0);
+    } catch (EOFException e) {
+      return false;
+    } finally {
+      IOUtils.closeStream(in);
+    }
+  }
+
+  private static boolean isBlockHeader(byte[] b, int i) {
+    return 0x1f == b[i] && (byte) 0x8b == b[i + 1] && 8 == b[i + 2]
+        && 0 != (b[i + 3] & 4) && 6 == b[i + 10] && 0 == b[i + 11]
+        && 'B' == b[i + 12] && 'C' == b[i + 13] && 2 == b[i + 14]
+        && 0 == b[i + 15];
+  }
+
+  private static int blockSize(byte[] b, int i) {
+    return ((b[i + 16] & 0xff) | (b[i + 17] & 0xff) << 8) + 1;
+  }
+
+  /**
+   * Finds the first block starting at or after from.  A candidate header
+   * must be followed by another header, or by the end of the file, to rule
+   * out compressed data that happens to look like one.
+   *
+   * @return the offset of the block, or -1 if there is none
+   */
+  static long findBlock(FSDataInputStream in, long from, long length)
+      throws IOException {
+    byte[] window = new byte[2 * MAX_BLOCK_SIZE + HEADER_SIZE];
+    for (long base = from; base < length; base += MAX_BLOCK_SIZE) {
+      int n = (int) Math.min(window.length, length - base);
+      in.readFully(base, window, 0, n);
+      int last = Math.min(n - HEADER_SIZE, MAX_BLOCK_SIZE);
+      for (int i = 0; i <= last; i++) {
+        if (!isBlockHeader(window, i)) {
+          continue;
+        }
+        long next = base + i + blockSize(window, i);
+        if (next == length) {
+          return base + i;
+        }
+        int j = (int) (next - base);
+        if (next < length && j + HEADER_SIZE <= n && isBlockHeader(window, j)) {
+          return base + i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads blocks until one holds data.
+   *
+   * @return false at the end of the file
+   */
+  private boolean readNonEmptyBlock() throws IOException {
+    do {
+      if (!readBlock()) {
+        return false;
+      }
+    } while (0 == blockLength);
+    if (-1 == boundaryBlock && blockAddress >= end) {
+      boundaryBlock = blockAddress;
+    }
+    return true;
+  }
+
+  private boolean readBlock() throws IOException {
+    int first = in.read();
+    if (-1 == first) {
+      return false;
+    }
+    compressed[0] = (byte) first;
+    in.readFully(compressed, 1, HEADER_SIZE - 1);
+    if (!isBlockHeader(compressed, 0)) {
+      throw new IOException("invalid BGZF block header at " + nextBlockAddress);
+    }
+    int size = blockSize(compressed, 0);
+    in.readFully(compressed, HEADER_SIZE, size - HEADER_SIZE);
+    int isize = (compressed[size - 4] & 0xff)
+        | (compressed[size - 3] & 0xff) << 8
+        | (compressed[size - 2] & 0xff) << 16
+        | (compressed[size - 1] & 0xff) << 24;
+
+    inflater.reset();
+    inflater.setInput(compressed, HEADER_SIZE, size - HEADER_SIZE - FOOTER_SIZE);
+    try {
+      int inflated = 0;
+      while (inflated < isize && !inflater.finished()) {
+        inflated += inflater.inflate(block, inflated, isize - inflated);
+      }
+      if (inflated != isize) {
+        throw new IOException("truncated BGZF block at " + nextBlockAddress);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("corrupt BGZF block at " + nextBlockAddress, e);
+    }
+    blockAddress = nextBlockAddress;
+    nextBlockAddress += size;
+    blockLength = isize;
+    blockPos = 0;
+    return true;
+  }
+
+  /**
+   * Reads through the next newline into line, without it.
+   *
+   * @return false if there was nothing left to read
+   */
+  private boolean readLine() throws IOException {
+    lineLength = 0;
+    boolean read = false;
+    while (true) {
+      if (blockPos == blockLength && !readNonEmptyBlock()) {
+        return read;
+      }
+      read = true;
+      int from = blockPos;
+      while (blockPos < blockLength && '\n' != block[blockPos]) {
+        blockPos++;
+      }
+      append(from, blockPos);
+      if (blockPos < blockLength) {
+        blockPos++;
+        return true;
+      }
+    }
+  }
+
+  private void append(int from, int to) {
+    int n = to - from;
+    if (line.length < lineLength + n) {
+      line = Arrays.copyOf(line, Math.max(lineLength + n, line.length * 2));
+    }
+    System.arraycopy(block, from, line, lineLength, n);
+    lineLength += n;
+  }
+
+  public synchronized boolean next(LongWritable key, Text value)
+      throws IOException {
+    if (done) {
+      return false;
+    }
+    if (blockPos == blockLength && !readNonEmptyBlock()) {
+      done = true;
+      return false;
+    }
+    if (blockAddress >= end
+        && (blockAddress != boundaryBlock || 0 != blockPos)) {
+      done = true;
+      return false;
+    }
+    key.set(blockAddress << 16 | blockPos);
+    if (!readLine()) {
+      done = true;
+      return false;
+    }
+    int length = lineLength;
+    if (0 < length && '\r' == line[length - 1]) {
+      length--;
+    }
+    value.set(line, 0, length);
+    return true;
+  }
+
+  public LongWritable createKey() {
+    return new LongWritable();
+  }
+
+  public Text createValue() {
+    return new Text();
+  }
+
+  public synchronized long getPos() throws IOException {
+    return blockAddress;
+  }
+
+  public float getProgress() throws IOException {
+    if (done || start == end) {
+      return 1.0f;
+    }
+    return Math.min(1.0f, (blockAddress - start) / (float) (end - start));
+  }
+
+  public synchronized void close() throws IOException {
+    inflater.end();
+    in.close();
+  }
+}
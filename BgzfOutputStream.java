@@ -0,0 +1,315 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * BgzfOutputStream writes the blocked gzip format used by bgzip and tabix.
+ *
+ * Input is cut into blocks of BLOCK_SIZE uncompressed bytes.  Each block is
+ * deflated on a shared pool of worker threads and the compressed blocks are
+ * written in order, so the output can be read by any gzip reader and
+ * seeked by BGZF virtual offsets.  Because every block but the last holds
+ * exactly BLOCK_SIZE bytes, the virtual offset of any uncompressed position
+ * can be computed once the compressed blocks have been written; see
+ * getVirtualOffset.
+ *
+ * The format is described in
+ * http://samtools.github.io/hts-specs/SAMv1.pdf
+ **/
+
+class BgzfOutputStream extends OutputStream {
+
+  // The same block size bgzip uses, which leaves room for the header and
+  // footer even when a block does not compress.
+  static final int BLOCK_SIZE = 0xff00;
+  private static final int MAX_BLOCK_SIZE = 0x10000;
+  private static final int HEADER_SIZE = 18;
+  private static final int FOOTER_SIZE = 8;
+  private static final byte[] EOF_BLOCK = {
+      0x1f, (byte) 0x8b, 0x08, 0x04, 0, 0, 0, 0, 0, (byte) 0xff, 0x06, 0,
+      0x42, 0x43, 0x02, 0, 0x1b, 0, 0x03, 0, 0, 0, 0, 0, 0, 0, 0, 0
+  };
+
+  private static final Log LOG = LogFactory.getLog(BgzfOutputStream.class);
+
+  private static ExecutorService sharedExecutor;
+  private static int sharedThreads;
+
+  private static final ThreadLocal<Deflater> deflaters =
+      new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+          return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+      };
+
+  private final OutputStream out;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+
+  private final ArrayDeque<Future<byte[]>> pending =
+      new ArrayDeque<Future<byte[]>>();
+  private final ArrayDeque<byte[]> pendingInputs = new ArrayDeque<byte[]>();
+  private final ArrayDeque<byte[]> freeInputs = new ArrayDeque<byte[]>();
+
+  private byte[] buffer = new byte[BLOCK_SIZE];
+  private int bufferLength;
+  private long uncompressedOffset;
+
+  // The compressed offset at which each written block starts.
+  private long[] blockOffsets = new long[1024];
+  private int blocksWritten;
+  private long compressedOffset;
+  private boolean closed;
+
+  /**
+   * Compresses blocks on the calling thread.
+   */
+  BgzfOutputStream(OutputStream out) {
+    this(out, null, 0);
+  }
+
+  /**
+   * @param executor where blocks are compressed, or null to compress them
+   *     on the calling thread
+   * @param threads the number of threads of executor; up to twice as many
+   *     blocks are held while they are compressed
+   */
+  BgzfOutputStream(OutputStream out, ExecutorService executor, int threads) {
+    this.out = out;
+    this.executor = executor;
+    this.maxPendingBlocks = executor == null ? 0 : 2 * Math.max(1, threads);
+  }
+
+  /**
+   * @return a pool of daemon compression threads shared by every stream in
+   *     this JVM, created with the given size on first use.  The pool is
+   *     not resized by later calls asking for another size.
+   */
+  static synchronized ExecutorService getSharedExecutor(int threads) {
+    threads = Math.max(1, threads);
+    if (sharedExecutor != null && threads != sharedThreads) {
+      LOG.warn("asked for " + threads + " BGZF compression threads but the"
+          + " shared pool already has " + sharedThreads);
+    }
+    if (sharedExecutor == null) {
+      sharedThreads = threads;
+      sharedExecutor = Executors.newFixedThreadPool(threads,
+          new ThreadFactory() {
+            private int count;
+
+            public synchronized Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "bgzf-compressor-" + count++);
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return sharedExecutor;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    buffer[bufferLength++] = (byte) b;
+    uncompressedOffset++;
+    if (BLOCK_SIZE == bufferLength) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (0 < len) {
+      int n = Math.min(len, BLOCK_SIZE - bufferLength);
+      System.arraycopy(b, off, buffer, bufferLength, n);
+      bufferLength += n;
+      uncompressedOffset += n;
+      off += n;
+      len -= n;
+      if (BLOCK_SIZE == bufferLength) {
+        submitBlock();
+      }
+    }
+  }
+
+  /**
+   * Blocks are only cut when full, so that virtual offsets stay computable;
+   * flush does not force out a partial block.
+   */
+  @Override
+  public void flush() throws IOException {
+  }
+
+  /**
+   * @return the number of uncompressed bytes written so far
+   */
+  long getUncompressedOffset() {
+    return uncompressedOffset;
+  }
+
+  /**
+   * Converts an uncompressed position into a BGZF virtual offset.  Only
+   * valid after close, once every block has been written.
+   */
+  long getVirtualOffset(long position) {
+    int block = (int) (position / BLOCK_SIZE);
+    int within = (int) (position % BLOCK_SIZE);
+    return (blockOffsets[block] << 16) | within;
+  }
+
+  private void submitBlock() throws IOException {
+    final byte[] input = buffer;
+    final int length = bufferLength;
+    buffer = freeInputs.isEmpty() ? new byte[BLOCK_SIZE] : freeInputs.pop();
+    bufferLength = 0;
+
+    if (executor == null) {
+      writeBlock(compressBlock(input, length));
+      freeInputs.push(input);
+      return;
+    }
+    pending.add(executor.submit(new Callable<byte[]>() {
+      public byte[] call() {
+        return compressBlock(input, length);
+      }
+    }));
+    pendingInputs.add(input);
+    while (pending.size() > maxPendingBlocks) {
+      writeNextPending();
+    }
+  }
+
+  private void writeNextPending() throws IOException {
+    try {
+      writeBlock(pending.remove().get());
+    } catch (InterruptedException ie) {
+      throw new InterruptedIOException("interrupted compressing BGZF block");
+    } catch (ExecutionException ee) {
+      throw new IOException("failed to compress BGZF block", ee.getCause());
+    }
+    freeInputs.push(pendingInputs.remove());
+  }
+
+  private void writeBlock(byte[] block) throws IOException {
+    if (blocksWritten + 1 >= blockOffsets.length) {
+      blockOffsets = Arrays.copyOf(blockOffsets, blockOffsets.length * 2);
+    }
+    blockOffsets[blocksWritten++] = compressedOffset;
+    out.write(block);
+    compressedOffset += block.length;
+    // The position just past the last full block maps to the next block.
+    blockOffsets[blocksWritten] = compressedOffset;
+  }
+
+  /**
+   * @return one complete BGZF block holding the given bytes
+   */
+  static byte[] compressBlock(byte[] input, int length) {
+    byte[] block = new byte[MAX_BLOCK_SIZE];
+    int compressedLength = deflate(input, length, block);
+    int blockSize = HEADER_SIZE + compressedLength + FOOTER_SIZE;
+
+    block[0] = 0x1f;
+    block[1] = (byte) 0x8b;
+    block[2] = 8;  // CM deflate
+    block[3] = 4;  // FLG FEXTRA
+    // MTIME, XFL zero
+    block[9] = (byte) 0xff;  // OS unknown
+    block[10] = 6;  // XLEN
+    block[12] = 'B';
+    block[13] = 'C';
+    block[14] = 2;
+    writeShort(block, 16, blockSize - 1);
+
+    CRC32 crc = new CRC32();
+    crc.update(input, 0, length);
+    int footer = HEADER_SIZE + compressedLength;
+    writeInt(block, footer, (int) crc.getValue());
+    writeInt(block, footer + 4, length);
+    return Arrays.copyOf(block, blockSize);
+  }
+
+  /**
+   * @return the compressed length
+   */
+  private static int deflate(byte[] input, int length, byte[] block) {
+    int capacity = MAX_BLOCK_SIZE - HEADER_SIZE - FOOTER_SIZE;
+    Deflater deflater = deflaters.get();
+    deflater.reset();
+    deflater.setInput(input, 0, length);
+    deflater.finish();
+    int compressed = deflater.deflate(block, HEADER_SIZE, capacity);
+    if (!deflater.finished()) {
+      throw new IllegalStateException(
+          length + " bytes do not fit in a BGZF block");
+    }
+    return compressed;
+  }
+
+  private static void writeShort(byte[] b, int off, int v) {
+    b[off] = (byte) v;
+    b[off + 1] = (byte) (v >>> 8);
+  }
+
+  private static void writeInt(byte[] b, int off, int v) {
+    b[off] = (byte) v;
+    b[off + 1] = (byte) (v >>> 8);
+    b[off + 2] = (byte) (v >>> 16);
+    b[off + 3] = (byte) (v >>> 24);
+  }
+
+  /**
+   * Writes any partial block, waits for every pending block and ends the
+   * stream with the BGZF EOF marker.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (0 < bufferLength) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        writeNextPending();
+      }
+      out.write(EOF_BLOCK);
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(false);
+      }
+      out.close();
+    }
+  }
+}
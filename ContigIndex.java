@@ -0,0 +1,88 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ContigIndex numbers contigs in the order of the ##contig lines of a VCF
+ * header, which is the order records are sorted in.
+ **/
+
+final class ContigIndex {
+
+  /**
+   * The index of contigs missing from the header, which sort last.
+   */
+  static final int UNKNOWN = Integer.MAX_VALUE;
+
+  private static final Pattern CONTIG_PATTERN =
+      Pattern.compile("^##contig=<ID=([^,>]+)", Pattern.MULTILINE);
+
+  private final Map<Text, Integer> indexes = new HashMap<Text, Integer>();
+  private final List<String> names = new ArrayList<String>();
+  // Reused for lookups so that they do not allocate.
+  private final Text probe = new Text();
+
+  ContigIndex(String header) {
+    Matcher match = CONTIG_PATTERN.matcher(header);
+    while (match.find()) {
+      String name = match.group(1);
+      if (!indexes.containsKey(new Text(name))) {
+        indexes.put(new Text(name), names.size());
+        names.add(name);
+      }
+    }
+  }
+
+  /**
+   * @return a new index of the contigs in CustomMultiOutputFormat's header
+   */
+  static ContigIndex forDataset() {
+    return new ContigIndex(CustomMultiOutputFormat.DATASET_HEADER);
+  }
+
+  /**
+   * @return the index of the named contig, or UNKNOWN.  Not thread safe.
+   */
+  int indexOf(byte[] bytes, int start, int length) {
+    probe.set(bytes, start, length);
+    Integer index = indexes.get(probe);
+    return index == null ? UNKNOWN : index;
+  }
+
+  int indexOf(String name) {
+    Integer index = indexes.get(new Text(name));
+    return index == null ? UNKNOWN : index;
+  }
+
+  /**
+   * @return the name of the contig with the given index
+   */
+  String nameOf(int index) {
+    return names.get(index);
+  }
+
+  int size() {
+    return names.size();
+  }
+}
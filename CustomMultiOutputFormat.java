@@ -14,6 +14,8 @@ limitations under the License.
 
 package com.custom;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -28,7 +30,12 @@ import org.apache.hadoop.util.*;
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * CustomMultiOutputFormat implements the VCF header for VA data.
@@ -41,6 +48,9 @@ import java.io.UnsupportedEncodingException;
 
 public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V> {
 
+  private static final Log LOG =
+      LogFactory.getLog(CustomMultiOutputFormat.class);
+
   static final String DATASET_HEADER =
       "##fileformat=VCFv4.1\n"
       + "##FILTER=<ID=LowQual,Description=\"Low quality\">\n"
@@ -188,6 +198,187 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
     return new Path(key.toString(), leaf).toString();
   }
 
+  /**
+   * The maximum number of per-key writers held open at once by a task.
+   * Zero, the default, leaves the number of open writers unbounded.  It
+   * also caps PARQUET_ROW_GROUP_SIZE.
+   */
+  public static final String MAX_OPEN_WRITERS =
+      "custom.multioutputformat.max.open.writers";
+
+  /**
+   * Counters reported by the pool of per-key writers.
+   */
+  public static enum WriterPoolCounter {
+    WRITERS_OPENED,
+    WRITERS_EVICTED,
+    WRITERS_REOPENED
+  }
+
+  /**
+   * Counters summed over the per-key writers of a task as each is closed.
+   * The figures for each key are logged by the task.  WRITE_MILLIS is
+   * estimated from every WRITE_TIMING_INTERVALth write, so that the clock
+   * is not read twice per record.
+   */
+  public static enum WriterCounter {
+    RECORDS_WRITTEN,
+    HEADERS_WRITTEN,
+    UNCOMPRESSED_BYTES,
+    COMPRESSED_BYTES,
+    WRITE_MILLIS,
+    CLOSE_MILLIS,
+    STALL_MILLIS
+  }
+
+  // One write in this many is timed, for WRITE_MILLIS.
+  static final int WRITE_TIMING_INTERVAL = 64;
+
+  /**
+   * Add the statistic records of the gVCF mappers, e.g. ref_count, to the
+   * counters of STATISTICS_COUNTER_GROUP rather than writing each to a
+   * file of its own.  GvcfMapper and SortedGvcfMapper then count them
+   * directly and do not emit them at all.  Defaults to the value of
+   * PARQUET_OUTPUT.
+   */
+  public static final String STATISTICS_COUNTERS =
+      "custom.multioutputformat.statistics.counters";
+
+  public static final String STATISTICS_COUNTER_GROUP = "gVCF statistics";
+
+  @Override
+  public RecordWriter<K, V> getRecordWriter(FileSystem fs, JobConf job,
+      String name, Progressable progress) throws IOException {
+    return new PooledRecordWriter(fs, job, generateLeafFileName(name),
+        progress, job.getInt(MAX_OPEN_WRITERS, 0));
+  }
+
+  /**
+   * PooledRecordWriter routes each record to the writer for its key, like
+   * the writer returned by MultipleOutputFormat, but holds at most
+   * maxOpenWriters of them open.  When the cap is reached the least
+   * recently used writer is closed.  If its key is seen again the output
+   * continues in a new part file, e.g. part-00000-1, which gets its own VCF
+   * header.  Reducer input is grouped by key, so a small cap normally
+   * causes few reopens.
+   */
+  protected class PooledRecordWriter implements RecordWriter<K, V> {
+    private final FileSystem fs;
+    private final JobConf job;
+    private final String leafName;
+    private final Progressable progress;
+    private final int maxOpenWriters;
+    private final boolean countStatistics;
+
+    // Access ordered, so that iteration starts at the least recently used.
+    private final LinkedHashMap<String, RecordWriter<K, V>> recordWriters =
+        new LinkedHashMap<String, RecordWriter<K, V>>(16, 0.75f, true);
+    // The number of times each evicted path has been opened so far.
+    private final Map<String, Integer> generations =
+        new HashMap<String, Integer>();
+
+    PooledRecordWriter(FileSystem fs, JobConf job, String leafName,
+        Progressable progress, int maxOpenWriters) {
+      this.fs = fs;
+      this.job = job;
+      this.leafName = leafName;
+      this.progress = progress;
+      this.maxOpenWriters = maxOpenWriters;
+      this.countStatistics = isCountingStatistics(job);
+    }
+
+    public void write(K key, V value) throws IOException {
+      if (countStatistics && countStatistic(key, value)) {
+        return;
+      }
+      String keyBasedPath = generateFileNameForKeyValue(key, value, leafName);
+      String finalPath = getInputFileBasedOutputFileName(job, keyBasedPath);
+      K actualKey = generateActualKey(key, value);
+      V actualValue = generateActualValue(key, value);
+
+      RecordWriter<K, V> rw = recordWriters.get(finalPath);
+      if (rw == null) {
+        rw = open(finalPath);
+      }
+      rw.write(actualKey, actualValue);
+    }
+
+    /**
+     * @return whether the record was a statistic, now added to its counter
+     */
+    private boolean countStatistic(K key, V value) {
+      if (key == null || value == null) {
+        return false;
+      }
+      String name = key.toString();
+      if (!GvcfBlockCompressor.isStatistic(name)) {
+        return false;
+      }
+      long count;
+      try {
+        count = Long.parseLong(value.toString().trim());
+      } catch (NumberFormatException e) {
+        return false;
+      }
+      getReporter().incrCounter(STATISTICS_COUNTER_GROUP, name, count);
+      return true;
+    }
+
+    private RecordWriter<K, V> open(String finalPath) throws IOException {
+      if (0 < maxOpenWriters && recordWriters.size() >= maxOpenWriters) {
+        evictEldest();
+      }
+      String partPath = finalPath;
+      Integer generation = generations.get(finalPath);
+      if (generation != null) {
+        partPath = finalPath + "-" + generation;
+        generations.put(finalPath, generation + 1);
+        incrCounter(WriterPoolCounter.WRITERS_REOPENED);
+      }
+      RecordWriter<K, V> rw = getBaseRecordWriter(fs, job, partPath, progress);
+      recordWriters.put(finalPath, rw);
+      incrCounter(WriterPoolCounter.WRITERS_OPENED);
+      return rw;
+    }
+
+    private void evictEldest() throws IOException {
+      Iterator<Map.Entry<String, RecordWriter<K, V>>> eldest =
+          recordWriters.entrySet().iterator();
+      Map.Entry<String, RecordWriter<K, V>> entry = eldest.next();
+      eldest.remove();
+      if (!generations.containsKey(entry.getKey())) {
+        generations.put(entry.getKey(), 1);
+      }
+      close(entry.getKey(), entry.getValue(), getReporter());
+      incrCounter(WriterPoolCounter.WRITERS_EVICTED);
+    }
+
+    private Reporter getReporter() {
+      return progress instanceof Reporter ? (Reporter) progress : Reporter.NULL;
+    }
+
+    private void incrCounter(WriterPoolCounter counter) {
+      getReporter().incrCounter(counter, 1);
+    }
+
+    public void close(Reporter reporter) throws IOException {
+      for (Map.Entry<String, RecordWriter<K, V>> entry
+          : recordWriters.entrySet()) {
+        close(entry.getKey(), entry.getValue(), reporter);
+      }
+      recordWriters.clear();
+    }
+
+    private void close(String finalPath, RecordWriter<K, V> rw,
+        Reporter reporter) throws IOException {
+      rw.close(reporter);
+      if (rw instanceof LineRecordWriter
+          || rw instanceof ParquetRecordWriter) {
+        LOG.info(finalPath + ": " + rw);
+      }
+    }
+  }
+
   protected static class LineRecordWriter<K, V>
       implements RecordWriter<K, V> {
     private static final String utf8 = "UTF-8";
@@ -202,9 +393,39 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
 
     protected DataOutputStream out;
     private final byte[] keyValueSeparator;
+    private final TabixIndexer indexer;
+    private final FSDataOutputStream fileOut;
+    private final AsyncOutputStream async;
+
+    private long recordsWritten;
+    private long headersWritten;
+    private long uncompressedBytes;
+    private long compressedBytes = -1;
+    private long writes;
+    private long writeNanos;
+    private long closeNanos;
 
     public LineRecordWriter(DataOutputStream out, String keyValueSeparator) {
+      this(out, keyValueSeparator, null,
+          out instanceof FSDataOutputStream ? (FSDataOutputStream) out : null,
+          null);
+    }
+
+    /**
+     * @param indexer given the position of each record written to out, or
+     *     null to write no index
+     * @param fileOut the file stream under out, from which the compressed
+     *     size is taken, or null if it is not known
+     * @param async the AsyncOutputStream under out, whose stalls are
+     *     counted, or null
+     */
+    LineRecordWriter(DataOutputStream out, String keyValueSeparator,
+        TabixIndexer indexer, FSDataOutputStream fileOut,
+        AsyncOutputStream async) {
       this.out = out;
+      this.indexer = indexer;
+      this.fileOut = fileOut;
+      this.async = async;
       try {
         this.keyValueSeparator = keyValueSeparator.getBytes(utf8);
       } catch (UnsupportedEncodingException uee) {
@@ -222,15 +443,19 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
      * @param o the object to print
      * @throws IOException if the write throws, we pass it on
      */
-    private void writeObject(Object o) throws IOException {
+    private int writeObject(Object o) throws IOException {
       if (o instanceof Text) {
         Text to = (Text) o;
         out.write(to.getBytes(), 0, to.getLength());
+        return to.getLength();
       } else if (o instanceof BytesWritable) {
         BytesWritable bytes = (BytesWritable) o;
         out.write(bytes.getBytes(), 0, bytes.getLength());
+        return bytes.getLength();
       } else {
-        out.write(o.toString().getBytes(utf8));
+        byte[] bytes = o.toString().getBytes(utf8);
+        out.write(bytes);
+        return bytes.length;
       }
     }
 
@@ -242,6 +467,8 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
         if (nullKey || nullValue) {
           return;
         }
+        boolean timed = 0 == ++writes % WRITE_TIMING_INTERVAL;
+        long started = timed ? System.nanoTime() : 0;
         if (0 == out.size()) {
           // This record will be written to a newly opened file.
           // Write the VCF header first.
@@ -252,14 +479,262 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
               + "\n";
           out.write(header.getBytes(), 0,
               header.getBytes().length);
+          headersWritten++;
+          uncompressedBytes += header.getBytes().length;
         }
-        writeObject(value);
+        long start = indexer == null ? 0 : indexer.position();
+        uncompressedBytes += writeObject(value) + newline.length;
         out.write(newline);
+        if (indexer != null) {
+          indexer.add(value, start, indexer.position());
+        }
+        recordsWritten++;
+        if (timed) {
+          writeNanos += (System.nanoTime() - started) * WRITE_TIMING_INTERVAL;
+        }
       }
 
     public synchronized void close(Reporter reporter) throws IOException {
+        long started = System.nanoTime();
         out.close();
+        if (indexer != null) {
+          indexer.close();
+        }
+        closeNanos = System.nanoTime() - started;
+        if (fileOut != null) {
+          compressedBytes = fileOut.getPos();
+        }
+        reportCounters(reporter);
       }
+
+    private void reportCounters(Reporter reporter) {
+      if (reporter == null) {
+        return;
+      }
+      reporter.incrCounter(WriterCounter.RECORDS_WRITTEN, recordsWritten);
+      reporter.incrCounter(WriterCounter.HEADERS_WRITTEN, headersWritten);
+      reporter.incrCounter(WriterCounter.UNCOMPRESSED_BYTES,
+          uncompressedBytes);
+      if (0 <= compressedBytes) {
+        reporter.incrCounter(WriterCounter.COMPRESSED_BYTES, compressedBytes);
+      }
+      reporter.incrCounter(WriterCounter.WRITE_MILLIS, writeNanos / 1000000);
+      reporter.incrCounter(WriterCounter.CLOSE_MILLIS, closeNanos / 1000000);
+      if (async != null) {
+        reporter.incrCounter(WriterCounter.STALL_MILLIS,
+            async.getStallNanos() / 1000000);
+      }
+    }
+
+    /**
+     * @return the number of records written, not counting the header
+     */
+    public synchronized long getRecordsWritten() {
+      return recordsWritten;
+    }
+
+    /**
+     * @return the number of VCF headers written, one per file
+     */
+    public synchronized long getHeadersWritten() {
+      return headersWritten;
+    }
+
+    /**
+     * @return the number of bytes written before compression
+     */
+    public synchronized long getUncompressedBytes() {
+      return uncompressedBytes;
+    }
+
+    /**
+     * @return the size of the file once closed, or -1 if it is not known
+     */
+    public synchronized long getCompressedBytes() {
+      return compressedBytes;
+    }
+
+    /**
+     * @return the nanoseconds spent in write, estimated from every
+     *     WRITE_TIMING_INTERVALth write
+     */
+    public synchronized long getWriteNanos() {
+      return writeNanos;
+    }
+
+    /**
+     * @return the nanoseconds spent in close
+     */
+    public synchronized long getCloseNanos() {
+      return closeNanos;
+    }
+
+    /**
+     * @return the nanoseconds write spent waiting for the asynchronous
+     *     writer, which are part of the write time, or -1 if not writing
+     *     asynchronously
+     */
+    public synchronized long getStallNanos() {
+      return async == null ? -1 : async.getStallNanos();
+    }
+
+    @Override
+    public synchronized String toString() {
+      return recordsWritten + " records, " + headersWritten + " headers, "
+          + uncompressedBytes + " bytes uncompressed, "
+          + compressedBytes + " bytes compressed, "
+          + writeNanos / 1000000 + " ms in write, "
+          + (async == null ? ""
+              : async.getStallNanos() / 1000000 + " ms stalled, ")
+          + closeNanos / 1000000 + " ms in close";
+    }
+  }
+
+  /**
+   * Write BGZF instead of using the output compression codec, so that the
+   * output can be indexed and seeked.
+   */
+  public static final String BGZF_OUTPUT = "custom.multioutputformat.bgzf";
+
+  /**
+   * The number of threads compressing BGZF blocks.  Defaults to the number
+   * of processors.  The threads are shared by every BGZF file of the JVM
+   * and sized by the first file opened; each file holds up to twice this
+   * many blocks while they are compressed.
+   */
+  public static final String BGZF_THREADS =
+      "custom.multioutputformat.bgzf.threads";
+
+  /**
+   * Write a tabix index next to each BGZF output file.  Requires the
+   * records within each file to be sorted by position.
+   */
+  public static final String TABIX_INDEX = "custom.multioutputformat.tabix";
+
+  private RecordWriter<K, V> getBgzfRecordWriter(JobConf job, String name,
+      Progressable progress, String keyValueSeparator) throws IOException {
+    return newBgzfRecordWriter(job,
+        FileOutputFormat.getTaskOutputPath(job, name + ".gz"), progress,
+        keyValueSeparator);
+  }
+
+  /**
+   * @return a writer of BGZF to file, indexed if TABIX_INDEX is set
+   */
+  static <K, V> LineRecordWriter<K, V> newBgzfRecordWriter(JobConf job,
+      Path file, Progressable progress, String keyValueSeparator)
+      throws IOException {
+    FileSystem fs = file.getFileSystem(job);
+    FSDataOutputStream fileOut = fs.create(file, progress);
+    // The blocks are already compressed in parallel, so only their writes
+    // are left to the asynchronous writer, below the BGZF stream and so
+    // below the positions the index is built from.
+    AsyncOutputStream async = newAsyncOutputStream(job, fileOut);
+    int threads = job.getInt(BGZF_THREADS,
+        Runtime.getRuntime().availableProcessors());
+    BgzfOutputStream bgzfOut = new BgzfOutputStream(
+        async == null ? fileOut : async,
+        1 < threads ? BgzfOutputStream.getSharedExecutor(threads) : null,
+        threads);
+    TabixIndexer indexer = null;
+    if (job.getBoolean(TABIX_INDEX, false)) {
+      indexer = new TabixIndexer(bgzfOut, fs, file.suffix(".tbi"), progress);
+    }
+    return new LineRecordWriter<K, V>(new DataOutputStream(bgzfOut),
+        keyValueSeparator, indexer, fileOut, async);
+  }
+
+  /**
+   * Hand each writer's output to a background thread, which compresses it
+   * if the output is compressed and writes it to the file, rather than
+   * doing so in write.  The writer copies records into buffers of
+   * ASYNC_BUFFER_SIZE bytes and waits, counted as STALL_MILLIS, only when
+   * ASYNC_QUEUE_DEPTH full buffers are waiting to be written.  Failures to
+   * write are thrown by a later write or by close.  Each open writer holds
+   * up to ASYNC_QUEUE_DEPTH + 2 buffers, so MAX_OPEN_WRITERS should be set
+   * with many keys.  Applies to text and BGZF output, not Parquet.
+   */
+  public static final String ASYNC_OUTPUT = "custom.multioutputformat.async";
+
+  /**
+   * The size in bytes of the buffers handed to the background thread.
+   * Defaults to 64KB.
+   */
+  public static final String ASYNC_BUFFER_SIZE =
+      "custom.multioutputformat.async.buffer.size";
+
+  /**
+   * The number of full buffers each writer may queue before it waits.
+   * Defaults to 4.
+   */
+  public static final String ASYNC_QUEUE_DEPTH =
+      "custom.multioutputformat.async.queue.depth";
+
+  /**
+   * The number of threads writing the output of all the writers of a task.
+   * Each writer's output is written by one thread at a time, in order.
+   * Defaults to the number of processors.
+   */
+  public static final String ASYNC_THREADS =
+      "custom.multioutputformat.async.threads";
+
+  /**
+   * @return an asynchronous stream over out if ASYNC_OUTPUT is set, or null
+   */
+  private static AsyncOutputStream newAsyncOutputStream(JobConf job,
+      OutputStream out) {
+    if (!job.getBoolean(ASYNC_OUTPUT, false)) {
+      return null;
+    }
+    return new AsyncOutputStream(out,
+        AsyncOutputStream.getSharedExecutor(job.getInt(ASYNC_THREADS,
+            Runtime.getRuntime().availableProcessors())),
+        job.getInt(ASYNC_BUFFER_SIZE, 64 * 1024),
+        job.getInt(ASYNC_QUEUE_DEPTH, 4));
+  }
+
+  /**
+   * Write each key's records as typed Parquet columns rather than text.
+   * See ParquetRecordWriter.  The statistics records are counted as with
+   * STATISTICS_COUNTERS unless that is set to false, which fails the job,
+   * since they are not VCF records.
+   */
+  public static final String PARQUET_OUTPUT =
+      "custom.multioutputformat.parquet";
+
+  /**
+   * The number of bytes of Parquet output buffered in memory for each key
+   * before a row group is written.  Defaults to 8MB.  Each open writer
+   * buffers up to this much, so when MAX_OPEN_WRITERS is set the size is
+   * capped at half the task's heap divided by MAX_OPEN_WRITERS, but not
+   * below 1MB.  With MAX_OPEN_WRITERS unset a task holds a writer for
+   * every key it has seen, so many keys need a smaller size.
+   */
+  public static final String PARQUET_ROW_GROUP_SIZE =
+      "custom.multioutputformat.parquet.row.group.size";
+
+  /**
+   * Dictionary encode the Parquet columns.  Defaults to true.  The setting
+   * is for all columns, as Parquet 1.8 has no per-column one; a column for
+   * which the dictionary does not pay off, such as POS, falls back to plain
+   * encoding.
+   */
+  public static final String PARQUET_DICTIONARY =
+      "custom.multioutputformat.parquet.dictionary";
+
+  /**
+   * @return whether the gVCF statistics go to counters rather than files
+   */
+  static boolean isCountingStatistics(JobConf job) {
+    return job.getBoolean(STATISTICS_COUNTERS,
+        job.getBoolean(PARQUET_OUTPUT, false));
+  }
+
+  private RecordWriter<K, V> getParquetRecordWriter(JobConf job, String name)
+      throws IOException {
+    Path file = FileOutputFormat.getTaskOutputPath(job, name + ".parquet");
+    return ParquetRecordWriter.create(job, file, getCompressOutput(job)
+        ? getOutputCompressorClass(job, GzipCodec.class) : null);
   }
 
   public RecordWriter<K, V> getBaseRecordWriter(FileSystem ignored,
@@ -270,11 +745,20 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
     boolean isCompressed = getCompressOutput(job);
     String keyValueSeparator = job.get("mapred.textoutputformat.separator",
         "\t");
-    if (!isCompressed) {
+    if (job.getBoolean(PARQUET_OUTPUT, false)) {
+      return getParquetRecordWriter(job, name);
+    } else if (job.getBoolean(BGZF_OUTPUT, false)) {
+      return getBgzfRecordWriter(job, name, progress, keyValueSeparator);
+    } else if (!isCompressed) {
       Path file = FileOutputFormat.getTaskOutputPath(job, name);
       FileSystem fs = file.getFileSystem(job);
       FSDataOutputStream fileOut = fs.create(file, progress);
-      return new LineRecordWriter<K, V>(fileOut, keyValueSeparator);
+      AsyncOutputStream async = newAsyncOutputStream(job, fileOut);
+      if (async == null) {
+        return new LineRecordWriter<K, V>(fileOut, keyValueSeparator);
+      }
+      return new LineRecordWriter<K, V>(new DataOutputStream(async),
+          keyValueSeparator, null, fileOut, async);
     } else {
       Class<? extends CompressionCodec> codecClass =
           getOutputCompressorClass(job, GzipCodec.class);
@@ -286,9 +770,11 @@ public class CustomMultiOutputFormat<K, V> extends MultipleTextOutputFormat<K, V
               name + codec.getDefaultExtension());
       FileSystem fs = file.getFileSystem(job);
       FSDataOutputStream fileOut = fs.create(file, progress);
+      OutputStream codecOut = codec.createOutputStream(fileOut);
+      AsyncOutputStream async = newAsyncOutputStream(job, codecOut);
       return new LineRecordWriter<K, V>(new DataOutputStream
-          (codec.createOutputStream(fileOut)),
-          keyValueSeparator);
+          (async == null ? codecOut : async),
+          keyValueSeparator, null, fileOut, async);
     }
   }
 }
@@ -0,0 +1,526 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * GvcfBlockCompressor is a line-for-line port of the filtering and block
+ * merging in gvcf-mapper.py.
+ *
+ * Consecutive reference calls are merged into one record whose INFO is
+ * rewritten to END=pos, as are consecutive filtered calls, which are also
+ * rewritten to a ./. genotype.  Variants that pass the filter are emitted
+ * unchanged.  The quirks of the Python script are kept deliberately so that
+ * the output is byte-for-byte identical to it.
+ **/
+
+class GvcfBlockCompressor {
+
+  static final String REF_COUNT = "ref_count";
+  static final String SNP_COUNT = "snp_count";
+  static final String INDEL_COUNT = "indel_count";
+  static final String FILTERED_REF_COUNT = "filtered_ref_count";
+  static final String FILTERED_SNP_COUNT = "filtered_snp_count";
+  static final String FILTERED_INDEL_COUNT = "filtered_indel_count";
+  private static final String[] STATISTICS = {
+    REF_COUNT, SNP_COUNT, INDEL_COUNT,
+    FILTERED_REF_COUNT, FILTERED_SNP_COUNT, FILTERED_INDEL_COUNT
+  };
+
+  private static final byte[] HOM_REF_PHASED = bytesOf("0|0");
+  private static final byte[] HOM_REF_UNPHASED = bytesOf("0/0");
+  private static final byte[] NO_ALT = bytesOf(".");
+  private static final byte[] PASS = bytesOf("PASS");
+  private static final byte[] MQ0 = bytesOf("MQ0");
+  private static final byte[] MQ = bytesOf("MQ");
+  private static final byte[] END_PREFIX = bytesOf("END=");
+  private static final byte[] NO_CALL_FORMAT = bytesOf("GT");
+  private static final byte[] NO_CALL_GENOTYPE = bytesOf("./.");
+
+  // Markers for values that GvcfBlockMergeReducer finishes.  No VCF line
+  // or count starts with a control character.
+  static final byte PENDING_RECORD = 1;
+  static final byte PENDING_BLOCK = 2;
+  static final byte PENDING_COUNT = 3;
+
+  // Block state, mirroring g_start_block, g_end_block and ref_block.
+  private static final int BLOCK_NONE = 0;
+  private static final int BLOCK_REF = 1;
+  private static final int BLOCK_NO_CALL = 2;
+
+  private final Text key;
+  private final Text value = new Text();
+  private final VcfRecord record = new VcfRecord();
+
+  private final VcfRecord startBlock = new VcfRecord();
+  private boolean hasStartBlock;
+  private byte[] endBlockPos = new byte[16];
+  private int endBlockPosLength;
+  private long endBlockPosValue;
+  private boolean hasEndBlock;
+  private int blockType = BLOCK_NONE;
+  private long startBlockOrder;
+
+  private boolean synced = true;
+  private long emittedOrder;
+
+  private byte[] lineBuffer = new byte[1024];
+  private int lineLength;
+
+  private long snpCount;
+  private long indelCount;
+  private long refCount;
+  private long filteredSnpCount;
+  private long filteredIndelCount;
+  private long filteredRefCount;
+
+  private Reporter counters;
+
+  /**
+   * @param sampleId the key for every emitted VCF line
+   */
+  GvcfBlockCompressor(String sampleId) {
+    this.key = new Text(sampleId);
+  }
+
+  /**
+   * @return whether name is one of the counts emitted by finish
+   */
+  static boolean isStatistic(String name) {
+    for (String statistic : STATISTICS) {
+      if (statistic.equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds the counts to counters of
+   * CustomMultiOutputFormat.STATISTICS_COUNTER_GROUP when the input ends,
+   * rather than emitting them as records.
+   */
+  void setCounters(Reporter counters) {
+    this.counters = counters;
+  }
+
+  /**
+   * Marks this compressor as starting part way through a VCF, as it does
+   * for every input split but the first.  The block state left by the
+   * previous split is unknown, so records are passed on as PENDING_RECORD
+   * values until the first variant that passes the filter, which ends any
+   * block in the single pass case too.  From there on the output is the
+   * same as a single pass.
+   */
+  void startMidFile() {
+    synced = false;
+  }
+
+  /**
+   * Processes one line of a single-sample VCF.  Header and blank lines are
+   * skipped.
+   */
+  void process(byte[] bytes, int offset, int length,
+      OutputCollector<Text, Text> output) throws IOException {
+    process(bytes, offset, length, 0, output);
+  }
+
+  /**
+   * @param order the position of the line in its input, see getEmittedOrder
+   */
+  void process(byte[] bytes, int offset, int length, long order,
+      OutputCollector<Text, Text> output) throws IOException {
+    record.parse(bytes, offset, length);
+    if (record.isBlank() || record.isHeader()) {
+      return;
+    }
+
+    boolean variant = isVariant(record);
+    int snp = variant ? isSnp(record) : -1;
+    boolean passes = meetsFilterCriteria(record);
+    if (variant) {
+      if (1 == snp) {
+        snpCount++;
+      } else if (0 == snp) {
+        indelCount++;
+      }
+    } else {
+      refCount++;
+    }
+
+    if (!synced) {
+      if (!variant || !passes) {
+        countFiltered(variant, snp, passes);
+        emitPending(PENDING_RECORD, record.getBytes(), record.getStart(),
+            record.getLength(), order, output);
+        return;
+      }
+      synced = true;
+    }
+
+    if (variant) {
+      if (passes) {
+        // This is a variant, emit the preceeding non-variant region VCF
+        // block, if applicable, followed by this VCF line
+        emitBlock(output);
+        value.set(record.getBytes(), record.getStart(), record.getLength());
+        emittedOrder = order;
+        output.collect(key, value);
+      } else {
+        countFiltered(variant, snp, passes);
+        accumulateBlock(record, true, order, output);
+      }
+    } else {
+      // Gather information about this VCF line in our non-variant region
+      countFiltered(variant, snp, passes);
+      accumulateBlock(record, !passes, order, output);
+    }
+  }
+
+  private void countFiltered(boolean variant, int snp, boolean passes) {
+    if (passes) {
+      return;
+    }
+    if (!variant) {
+      filteredRefCount++;
+    } else if (1 == snp) {
+      filteredSnpCount++;
+    } else if (0 == snp) {
+      filteredIndelCount++;
+    }
+  }
+
+  /**
+   * @return the order passed with the record that begins the line being
+   *     collected, so that output can be keyed by input order
+   */
+  long getEmittedOrder() {
+    return emittedOrder;
+  }
+
+  /**
+   * Emits the final block, if applicable.
+   */
+  void flush(OutputCollector<Text, Text> output) throws IOException {
+    emitBlock(output);
+  }
+
+  /**
+   * Ends an input split.  Rather than emitting its final block, which the
+   * next split may continue, the block state is passed on as a
+   * PENDING_BLOCK value for the reducer to resume.  The counts follow as
+   * PENDING_COUNT values tagged with the input path so that the reducer
+   * can total them per input, unless they go to counters.
+   */
+  void finishSplit(String path, OutputCollector<Text, Text> output)
+      throws IOException {
+    if (hasStartBlock) {
+      lineLength = 0;
+      append(PENDING_BLOCK);
+      append(BLOCK_NO_CALL == blockType ? (byte) 'N' : (byte) 'R');
+      if (hasEndBlock) {
+        append(endBlockPos, 0, endBlockPosLength);
+      }
+      append((byte) '\t');
+      append(startBlock.getBytes(), startBlock.getStart(),
+          startBlock.getLength());
+      value.set(lineBuffer, 0, lineLength);
+      emittedOrder = startBlockOrder;
+      output.collect(key, value);
+      hasStartBlock = false;
+      hasEndBlock = false;
+      blockType = BLOCK_NONE;
+    }
+    if (counters != null) {
+      incrCounters();
+      return;
+    }
+    byte[] tag = VcfRecord.bytesOf(path + "\t");
+    emitPendingCount(REF_COUNT, tag, refCount, output);
+    emitPendingCount(SNP_COUNT, tag, snpCount, output);
+    emitPendingCount(INDEL_COUNT, tag, indelCount, output);
+    emitPendingCount(FILTERED_REF_COUNT, tag, filteredRefCount, output);
+    emitPendingCount(FILTERED_SNP_COUNT, tag, filteredSnpCount, output);
+    emitPendingCount(FILTERED_INDEL_COUNT, tag, filteredIndelCount, output);
+  }
+
+  private void emitPendingCount(String name, byte[] tag, long count,
+      OutputCollector<Text, Text> output) throws IOException {
+    byte[] digits = VcfRecord.bytesOf(Long.toString(count));
+    lineLength = 0;
+    append(PENDING_COUNT);
+    append(tag, 0, tag.length);
+    append(digits, 0, digits.length);
+    emittedOrder = 0;
+    output.collect(new Text(name), new Text(Arrays.copyOf(lineBuffer, lineLength)));
+  }
+
+  private void emitPending(byte kind, byte[] bytes, int offset, int length,
+      long order, OutputCollector<Text, Text> output) throws IOException {
+    lineLength = 0;
+    append(kind);
+    append(bytes, offset, length);
+    value.set(lineBuffer, 0, lineLength);
+    emittedOrder = order;
+    output.collect(key, value);
+  }
+
+  /**
+   * Resumes the block state written by finishSplit, emitting any current
+   * block first.
+   */
+  void resume(byte[] bytes, int offset, int length,
+      OutputCollector<Text, Text> output) throws IOException {
+    emitBlock(output);
+    int end = offset + length;
+    int tab = offset + 2;
+    while (tab < end && '\t' != bytes[tab]) {
+      tab++;
+    }
+    record.parse(bytes, tab + 1, end - tab - 1);
+    startBlock.copyFrom(record);
+    startBlockOrder = 0;
+    hasStartBlock = true;
+    blockType = 'N' == bytes[offset + 1] ? BLOCK_NO_CALL : BLOCK_REF;
+    if (tab > offset + 2) {
+      int posLength = tab - offset - 2;
+      if (endBlockPos.length < posLength) {
+        endBlockPos = new byte[posLength];
+      }
+      System.arraycopy(bytes, offset + 2, endBlockPos, 0, posLength);
+      endBlockPosLength = posLength;
+      endBlockPosValue = VcfRecord.parseLong(endBlockPos, 0, posLength);
+      hasEndBlock = true;
+    }
+  }
+
+  /**
+   * @return the offset of the VCF line within a value, or -1 if it holds a
+   *     count rather than a line
+   */
+  static int lineOffset(Text value) {
+    byte[] bytes = value.getBytes();
+    if (0 == value.getLength()) {
+      return 0;
+    }
+    switch (bytes[0]) {
+      case PENDING_RECORD:
+        return 1;
+      case PENDING_BLOCK:
+        for (int i = 2; i < value.getLength(); i++) {
+          if ('\t' == bytes[i]) {
+            return i + 1;
+          }
+        }
+        return -1;
+      case PENDING_COUNT:
+        return -1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Emits the final block followed by the counts, each keyed by its name,
+   * unless they go to counters.
+   */
+  void finish(OutputCollector<Text, Text> output) throws IOException {
+    flush(output);
+    if (counters != null) {
+      incrCounters();
+      return;
+    }
+    emitCount(REF_COUNT, refCount, output);
+    emitCount(SNP_COUNT, snpCount, output);
+    emitCount(INDEL_COUNT, indelCount, output);
+    emitCount(FILTERED_REF_COUNT, filteredRefCount, output);
+    emitCount(FILTERED_SNP_COUNT, filteredSnpCount, output);
+    emitCount(FILTERED_INDEL_COUNT, filteredIndelCount, output);
+  }
+
+  private void emitCount(String name, long count,
+      OutputCollector<Text, Text> output) throws IOException {
+    output.collect(new Text(name), new Text(Long.toString(count)));
+  }
+
+  private void incrCounters() {
+    String group = CustomMultiOutputFormat.STATISTICS_COUNTER_GROUP;
+    counters.incrCounter(group, REF_COUNT, refCount);
+    counters.incrCounter(group, SNP_COUNT, snpCount);
+    counters.incrCounter(group, INDEL_COUNT, indelCount);
+    counters.incrCounter(group, FILTERED_REF_COUNT, filteredRefCount);
+    counters.incrCounter(group, FILTERED_SNP_COUNT, filteredSnpCount);
+    counters.incrCounter(group, FILTERED_INDEL_COUNT, filteredIndelCount);
+  }
+
+  /**
+   * Accumulates one record of a non-variant region.  A block ends when its
+   * type changes or when a gap in POS is seen.  As in the Python script, the
+   * gap check is skipped for the record after a gap because the end of the
+   * new block has not been set yet.
+   */
+  private void accumulateBlock(VcfRecord fields, boolean noCall, long order,
+      OutputCollector<Text, Text> output) throws IOException {
+    // Check to see if the current block matches what we want to add to it
+    if (noCall && BLOCK_REF == blockType) {
+      emitBlock(output);
+    } else if (!noCall && BLOCK_NO_CALL == blockType) {
+      emitBlock(output);
+    }
+
+    if (BLOCK_NONE == blockType) {
+      blockType = noCall ? BLOCK_NO_CALL : BLOCK_REF;
+    }
+
+    // Set start and end points of block as necessary
+    if (!hasStartBlock) {
+      setStartBlock(fields, order);
+      setEndBlock(fields);
+    } else if (hasEndBlock && fields.longField(POS) > endBlockPosValue + 1) {
+      emitBlock(output);
+      setStartBlock(fields, order);
+      // Emit resets the block type, need to set again
+      blockType = noCall ? BLOCK_NO_CALL : BLOCK_REF;
+    } else {
+      setEndBlock(fields);
+    }
+  }
+
+  private void setStartBlock(VcfRecord fields, long order) {
+    startBlock.copyFrom(fields);
+    startBlockOrder = order;
+    hasStartBlock = true;
+  }
+
+  private void setEndBlock(VcfRecord fields) throws IOException {
+    int length = fields.fieldLength(POS);
+    if (endBlockPos.length < length) {
+      endBlockPos = new byte[length];
+    }
+    System.arraycopy(fields.getBytes(), fields.fieldStart(POS),
+        endBlockPos, 0, length);
+    endBlockPosLength = length;
+    endBlockPosValue = fields.longField(POS);
+    hasEndBlock = true;
+  }
+
+  /**
+   * Emits the current non-variant block, if applicable, using all values
+   * from the first record in the block with INFO overwritten by the end of
+   * the block.
+   */
+  private void emitBlock(OutputCollector<Text, Text> output)
+      throws IOException {
+    if (!hasStartBlock) {
+      return;
+    }
+
+    lineLength = 0;
+    for (int i = 0; i < startBlock.fieldCount(); i++) {
+      if (0 < i) {
+        append((byte) '\t');
+      }
+      if (INFO == i) {
+        append(END_PREFIX, 0, END_PREFIX.length);
+        if (hasEndBlock) {
+          append(endBlockPos, 0, endBlockPosLength);
+        } else {
+          appendField(startBlock, POS);
+        }
+      } else if (BLOCK_NO_CALL == blockType && FORMAT == i) {
+        append(NO_CALL_FORMAT, 0, NO_CALL_FORMAT.length);
+      } else if (BLOCK_NO_CALL == blockType && GENOTYPE == i) {
+        append(NO_CALL_GENOTYPE, 0, NO_CALL_GENOTYPE.length);
+      } else {
+        appendField(startBlock, i);
+      }
+    }
+    value.set(lineBuffer, 0, lineLength);
+    emittedOrder = startBlockOrder;
+    output.collect(key, value);
+
+    // Reset our block state
+    hasStartBlock = false;
+    hasEndBlock = false;
+    blockType = BLOCK_NONE;
+  }
+
+  private void appendField(VcfRecord fields, int field) {
+    append(fields.getBytes(), fields.fieldStart(field),
+        fields.fieldLength(field));
+  }
+
+  private void append(byte b) {
+    ensureLineCapacity(lineLength + 1);
+    lineBuffer[lineLength++] = b;
+  }
+
+  private void append(byte[] bytes, int offset, int length) {
+    ensureLineCapacity(lineLength + length);
+    System.arraycopy(bytes, offset, lineBuffer, lineLength, length);
+    lineLength += length;
+  }
+
+  private void ensureLineCapacity(int capacity) {
+    if (lineBuffer.length < capacity) {
+      lineBuffer = Arrays.copyOf(lineBuffer,
+          Math.max(capacity, lineBuffer.length * 2));
+    }
+  }
+
+  /**
+   * Determines whether or not the VCF fields constitute variant.
+   */
+  static boolean isVariant(VcfRecord fields) {
+    return !(fields.fieldContains(GENOTYPE, HOM_REF_PHASED)
+        || fields.fieldContains(GENOTYPE, HOM_REF_UNPHASED));
+  }
+
+  /**
+   * @return 1 for a SNP, 0 for an indel and -1 when ALT is empty
+   */
+  static int isSnp(VcfRecord fields) {
+    int length = fields.fieldLength(ALT);
+    if (1 == length) {
+      return 1;
+    } else if (1 < length) {
+      return 0;
+    }
+    return -1;
+  }
+
+  /**
+   * Variants must PASS.  Reference calls (ALT is .) must have
+   * 1) MQ0 less than 4
+   * 2) MQ greater than or = to 30
+   * 3) QUAL greater than or = to 30
+   */
+  static boolean meetsFilterCriteria(VcfRecord fields) throws IOException {
+    if (!fields.fieldEquals(ALT, NO_ALT)) {
+      return fields.fieldEquals(FILTER, PASS);
+    }
+    return fields.infoDouble(MQ0) < 4
+        && fields.infoDouble(MQ) >= 30
+        && fields.doubleField(QUAL) >= 30;
+  }
+}
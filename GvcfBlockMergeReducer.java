@@ -0,0 +1,87 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * GvcfBlockMergeReducer finishes the blocks that SortedGvcfMapper left
+ * pending at input split edges, so that split inputs give the same output
+ * as one mapper per file.
+ *
+ * Values arrive grouped by sample and in coordinate order.  Pending block
+ * state and pending records are fed back through a GvcfBlockCompressor;
+ * any other line ends the current block, as the passing variant that
+ * follows it did in the single pass, and is written as is.  Pending counts
+ * are totalled per input file, and the totals written in the order of the
+ * files' paths, as the shuffle leaves the order of the files' counts open.
+ *
+ * This relies on each input being sorted in the order of the dataset
+ * header's contigs, and on a sample's inputs not overlapping.
+ **/
+
+public class GvcfBlockMergeReducer extends MapReduceBase
+    implements Reducer<SamplePositionKey, Text, SamplePositionKey, Text> {
+
+  public void reduce(final SamplePositionKey key, Iterator<Text> values,
+      final OutputCollector<SamplePositionKey, Text> output,
+      Reporter reporter) throws IOException {
+    OutputCollector<Text, Text> sampleOutput =
+        new OutputCollector<Text, Text>() {
+          public void collect(Text sample, Text line) throws IOException {
+            output.collect(key, line);
+          }
+        };
+    GvcfBlockCompressor compressor =
+        new GvcfBlockCompressor(key.getSample().toString());
+    Map<String, Long> counts = new TreeMap<String, Long>();
+
+    while (values.hasNext()) {
+      Text value = values.next();
+      byte[] bytes = value.getBytes();
+      int length = value.getLength();
+      byte kind = 0 < length ? bytes[0] : 0;
+      if (GvcfBlockCompressor.PENDING_RECORD == kind) {
+        compressor.process(bytes, 1, length - 1, sampleOutput);
+      } else if (GvcfBlockCompressor.PENDING_BLOCK == kind) {
+        compressor.resume(bytes, 0, length, sampleOutput);
+      } else if (GvcfBlockCompressor.PENDING_COUNT == kind) {
+        String count = Text.decode(bytes, 1, length - 1);
+        int tab = count.lastIndexOf('\t');
+        String path = count.substring(0, tab);
+        Long total = counts.get(path);
+        counts.put(path, (total == null ? 0 : total)
+            + Long.parseLong(count.substring(tab + 1)));
+      } else {
+        compressor.flush(sampleOutput);
+        output.collect(key, value);
+      }
+    }
+    compressor.flush(sampleOutput);
+
+    for (Long total : counts.values()) {
+      output.collect(key, new Text(Long.toString(total)));
+    }
+  }
+}
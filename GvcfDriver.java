@@ -0,0 +1,76 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * GvcfDriver runs the gVCF conversion as a native MapReduce job that
+ * writes coordinate-sorted per-sample gVCFs:
+ *   hadoop jar /home/deflaux/custom.jar com.custom.GvcfDriver \
+ *   [-D custom.multioutputformat.bgzf=true] \
+ *   inputpath outputpath
+ *
+ * Plain and bgzipped inputs are split by VcfInputFormat.  Map output is
+ * keyed by SamplePositionKey, partitioned by sample and sorted on the
+ * serialized keys, so GvcfBlockMergeReducer sees each sample's records in
+ * order, joins the blocks cut at split edges and hands the records to
+ * CustomMultiOutputFormat.
+ **/
+
+public class GvcfDriver extends Configured implements Tool {
+
+  public int run(String[] args) throws Exception {
+    if (2 != args.length) {
+      System.err.println("Usage: GvcfDriver [generic options] <input> <output>");
+      ToolRunner.printGenericCommandUsage(System.err);
+      return -1;
+    }
+
+    JobConf job = new JobConf(getConf(), GvcfDriver.class);
+    job.setJobName("gvcf");
+
+    job.setInputFormat(VcfInputFormat.class);
+    job.setMapperClass(SortedGvcfMapper.class);
+    job.setMapRunnerClass(SortedGvcfMapper.class);
+    job.setMapOutputKeyClass(SamplePositionKey.class);
+    job.setMapOutputValueClass(Text.class);
+    job.setPartitionerClass(SamplePartitioner.class);
+    job.setOutputKeyComparatorClass(SamplePositionKey.Comparator.class);
+    job.setOutputValueGroupingComparator(
+        SamplePositionKey.SampleGroupingComparator.class);
+    job.setReducerClass(GvcfBlockMergeReducer.class);
+    job.setOutputKeyClass(SamplePositionKey.class);
+    job.setOutputValueClass(Text.class);
+    job.setOutputFormat(CustomMultiOutputFormat.class);
+
+    FileInputFormat.setInputPaths(job, new Path(args[0]));
+    FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+    return JobClient.runJob(job).isSuccessful() ? 0 : 1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new GvcfDriver(), args));
+  }
+}
@@ -0,0 +1,1010 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputCommitter;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobContext;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.OutputCommitter;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TaskAttemptContext;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GvcfLocalRunner runs the job of GvcfDriver in one JVM, without a
+ * cluster, on a fork-join pool of one thread per core:
+ *   java -cp custom.jar:<hadoop jars> com.custom.GvcfLocalRunner \
+ *   [-D custom.gvcflocal.threads=8] [-D custom.multioutputformat.bgzf=true] \
+ *   inputpath outputpath
+ *
+ * Each input is cut into splits which SortedGvcfMapper maps in parallel.
+ * Plain local files are memory-mapped and cut at the first line boundary
+ * after each SPLIT_SIZE bytes; other inputs are split by VcfInputFormat,
+ * as on the cluster.  Instead of the shuffle, each task keeps its
+ * sample's map output as runs sorted by SamplePositionKey, holding the
+ * sample once, and the runs of a sample are merged straight into
+ * GvcfBlockMergeReducer, which writes them with CustomMultiOutputFormat
+ * to the output directory.  Runs past BUFFER_SIZE are spilled to local
+ * files.  The samples are mapped and reduced in parallel too, and the
+ * statistics' counts are totalled per input as they are mapped.
+ *
+ * The mapper, reducer and output format are the cluster job's, and its
+ * output does not depend on where the inputs are split, so the files
+ * written are the same as GvcfDriver's, as are the statistics counters,
+ * which are logged at the end.
+ **/
+
+public class GvcfLocalRunner extends Configured implements Tool {
+
+  private static final Log LOG = LogFactory.getLog(GvcfLocalRunner.class);
+
+  /**
+   * The number of threads that map and reduce, by default one per core.
+   */
+  public static final String THREADS = "custom.gvcflocal.threads";
+
+  /**
+   * The most bytes of a plain input mapped by one task, give or take a
+   * line.  Smaller inputs are split in as many parts as there are threads.
+   */
+  public static final String SPLIT_SIZE = "custom.gvcflocal.split.size";
+
+  static final long DEFAULT_SPLIT_SIZE = 64L << 20;
+
+  /**
+   * The most bytes of map output held in memory, by default a quarter of
+   * the heap.  Half is shared among the running map tasks and half holds
+   * the output of finished tasks until their sample is reduced; output
+   * past either is sorted and spilled to files in mapred.local.dir.
+   */
+  public static final String BUFFER_SIZE = "custom.gvcflocal.buffer.size";
+
+  // The task attempt that the output format sees.
+  private static final String TASK_ID = "attempt_local_0001_r_000000_0";
+
+  private static final String[] NO_HOSTS = new String[0];
+
+  private JobConf job;
+  private LocalReporter reporter;
+  private VcfInputFormat inputFormat;
+  private CompressionCodecFactory codecs;
+  private final SamplePartitioner<Text> partitioner =
+      new SamplePartitioner<Text>();
+
+  private long taskBufferSize;
+  private long finishedBufferSize;
+  private int mergeFactor;
+  // The bytes of finished tasks' runs held in memory.
+  private final AtomicLong buffered = new AtomicLong();
+  private File spillDir;
+  private final AtomicInteger spills = new AtomicInteger();
+  // The totals of the statistics' counts, by name and input path.
+  private final Map<String, Map<String, Long>> statistics =
+      new LinkedHashMap<String, Map<String, Long>>();
+
+  public int run(String[] args) throws Exception {
+    if (2 != args.length) {
+      System.err.println(
+          "Usage: GvcfLocalRunner [generic options] <input> <output>");
+      ToolRunner.printGenericCommandUsage(System.err);
+      return -1;
+    }
+
+    job = new JobConf(getConf(), GvcfLocalRunner.class);
+    job.setJobName("gvcf-local");
+    job.set("mapred.task.id", TASK_ID);
+    job.setOutputCommitter(InPlaceOutputCommitter.class);
+    FileInputFormat.setInputPaths(job, new Path(args[0]));
+    Path output = new Path(args[1]);
+    FileOutputFormat.setOutputPath(job, output);
+
+    FileSystem outputFs = output.getFileSystem(job);
+    new CustomMultiOutputFormat<SamplePositionKey, Text>()
+        .checkOutputSpecs(outputFs, job);
+
+    reporter = new LocalReporter();
+    inputFormat = new VcfInputFormat();
+    inputFormat.configure(job);
+    codecs = new CompressionCodecFactory(job);
+    int threads = Math.max(1, job.getInt(THREADS,
+        Runtime.getRuntime().availableProcessors()));
+    Map<String, List<FileSplit>> samples = getSplits(threads);
+    long bufferSize = Math.max(2 * threads,
+        job.getLong(BUFFER_SIZE, Runtime.getRuntime().maxMemory() / 4));
+    taskBufferSize = bufferSize / 2 / threads;
+    finishedBufferSize = bufferSize / 2;
+    mergeFactor = Math.max(2, job.getInt("io.sort.factor", 10));
+
+    long started = System.currentTimeMillis();
+    spillDir = new File(
+        job.getLocalPath("gvcflocal_" + started).toUri().getPath());
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      pool.invoke(new JobTask(samples));
+    } catch (RuntimeException e) {
+      for (Throwable t = e; t != null; t = t.getCause()) {
+        if (t instanceof IOException) {
+          throw (IOException) t;
+        }
+      }
+      throw e;
+    } finally {
+      pool.shutdown();
+      FileUtil.fullyDelete(spillDir);
+    }
+
+    outputFs.create(new Path(output,
+        FileOutputCommitter.SUCCEEDED_FILE_NAME)).close();
+    LOG.info(samples.size() + " samples in "
+        + (System.currentTimeMillis() - started) + " ms on " + threads
+        + " threads, " + spills + " runs spilled");
+    reporter.counters.log(LOG);
+    return 0;
+  }
+
+  /**
+   * @return the splits of the inputs, by sample, in the order listed
+   */
+  private Map<String, List<FileSplit>> getSplits(int threads)
+      throws IOException {
+    long splitSize = Math.max(1,
+        Math.min(job.getLong(SPLIT_SIZE, DEFAULT_SPLIT_SIZE),
+            Integer.MAX_VALUE));
+    Map<String, List<FileSplit>> samples =
+        new LinkedHashMap<String, List<FileSplit>>();
+    for (FileStatus status : inputFormat.listInputs(job)) {
+      Path path = status.getPath();
+      String sample = GvcfMapper.sampleIdForPath(path.toString());
+      List<FileSplit> splits = samples.get(sample);
+      if (splits == null) {
+        splits = new ArrayList<FileSplit>();
+        samples.put(sample, splits);
+      }
+      File file = mappableFile(path);
+      if (file != null) {
+        long length = status.getLen();
+        splits.addAll(getLineSplits(path, file, length, Math.min(splitSize,
+            (length + threads - 1) / threads)));
+      } else {
+        JobConf fileJob = new JobConf(job);
+        FileInputFormat.setInputPaths(fileJob, path);
+        for (InputSplit split : inputFormat.getSplits(fileJob, threads)) {
+          splits.add((FileSplit) split);
+        }
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * @return the local file of an uncompressed input, or null
+   */
+  private File mappableFile(Path path) throws IOException {
+    FileSystem fs = path.getFileSystem(job);
+    if (codecs.getCodec(path) != null || !(fs instanceof LocalFileSystem)) {
+      return null;
+    }
+    return ((LocalFileSystem) fs).pathToFile(path);
+  }
+
+  /**
+   * Cuts a file at the first line boundary after every splitSize bytes.
+   */
+  private static List<FileSplit> getLineSplits(Path path, File file,
+      long length, long splitSize) throws IOException {
+    List<FileSplit> splits = new ArrayList<FileSplit>();
+    RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      long start = 0;
+      while (start < length) {
+        long end = start + splitSize < length
+            ? nextLineStart(in, start + splitSize)
+            : length;
+        splits.add(new FileSplit(path, start, end - start, NO_HOSTS));
+        start = end;
+      }
+    } finally {
+      in.close();
+    }
+    return splits;
+  }
+
+  /**
+   * @return the offset of the first line that starts at or after from
+   */
+  private static long nextLineStart(RandomAccessFile in, long from)
+      throws IOException {
+    byte[] buffer = new byte[8192];
+    long pos = from - 1;
+    in.seek(pos);
+    int n;
+    while (0 < (n = in.read(buffer))) {
+      for (int i = 0; i < n; i++) {
+        if ('\n' == buffer[i]) {
+          return pos + i + 1;
+        }
+      }
+      pos += n;
+    }
+    return pos;
+  }
+
+  /**
+   * Maps and reduces every sample, then reduces the statistics, whose
+   * counts were totalled as the samples were mapped.
+   */
+  private final class JobTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, List<FileSplit>> samples;
+
+    JobTask(Map<String, List<FileSplit>> samples) {
+      this.samples = samples;
+    }
+
+    @Override
+    protected void compute() {
+      List<SampleTask> sampleTasks = new ArrayList<SampleTask>();
+      for (Map.Entry<String, List<FileSplit>> sample : samples.entrySet()) {
+        sampleTasks.add(new SampleTask(sample.getKey(), sample.getValue()));
+      }
+      invokeAll(sampleTasks);
+
+      List<ReduceTask> reduceTasks = new ArrayList<ReduceTask>();
+      for (Map.Entry<String, Map<String, Long>> statistic
+          : statistics.entrySet()) {
+        reduceTasks.add(new ReduceTask(statistic.getKey(),
+            counts(statistic.getValue())));
+      }
+      invokeAll(reduceTasks);
+    }
+  }
+
+  /**
+   * Maps the splits of one sample and merges their runs into the reducer.
+   */
+  private final class SampleTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final String sample;
+    private final List<FileSplit> splits;
+
+    SampleTask(String sample, List<FileSplit> splits) {
+      this.sample = sample;
+      this.splits = splits;
+    }
+
+    @Override
+    protected void compute() {
+      List<MapTask> mapTasks = new ArrayList<MapTask>();
+      for (FileSplit split : splits) {
+        mapTasks.add(new MapTask(split, sample));
+      }
+      invokeAll(mapTasks);
+
+      List<Run> runs = new ArrayList<Run>();
+      for (MapTask task : mapTasks) {
+        runs.addAll(task.join());
+      }
+      try {
+        // As in the shuffle, no merge reads more than io.sort.factor runs.
+        while (mergeFactor < runs.size()) {
+          List<Run> merged = new ArrayList<Run>();
+          for (int i = 0; i < runs.size(); i += mergeFactor) {
+            List<Run> group =
+                runs.subList(i, Math.min(runs.size(), i + mergeFactor));
+            merged.add(1 == group.size() ? group.get(0) : merge(group));
+          }
+          runs = merged;
+        }
+        if (!runs.isEmpty()) {
+          Merger merger = new Merger(runs);
+          try {
+            reduce(sample, merger);
+          } finally {
+            merger.close();
+          }
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } finally {
+        for (Run run : runs) {
+          release(run);
+        }
+      }
+    }
+  }
+
+  private final class MapTask extends RecursiveTask<List<Run>> {
+    private static final long serialVersionUID = 1L;
+
+    private final FileSplit split;
+    private final String sample;
+
+    MapTask(FileSplit split, String sample) {
+      this.split = split;
+      this.sample = sample;
+    }
+
+    @Override
+    protected List<Run> compute() {
+      try {
+        return map(split, sample);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private final class ReduceTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final List<Text> values;
+
+    ReduceTask(String name, List<Text> values) {
+      this.name = name;
+      this.values = values;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        reduce(name, values.iterator());
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * @return the runs of the sample's map output of a split, in key order
+   *     within each run
+   */
+  private List<Run> map(FileSplit split, String sample) throws IOException {
+    JobConf taskJob = new JobConf(job);
+    taskJob.set(GvcfMapper.INPUT_FILE_KEY, split.getPath().toString());
+    taskJob.setLong(SortedGvcfMapper.INPUT_START_KEY, split.getStart());
+
+    RunCollector collector = new RunCollector(sample);
+    File file = mappableFile(split.getPath());
+    RecordReader<LongWritable, Text> reader = file != null
+        ? new VcfInputFormat.HeaderSkippingRecordReader(
+            new MappedLineRecordReader(taskJob, file, split))
+        : inputFormat.getRecordReader(split, taskJob, reporter);
+    try {
+      SortedGvcfMapper mapper = new SortedGvcfMapper();
+      mapper.configure(taskJob);
+      mapper.run(reader, collector, reporter);
+    } finally {
+      reader.close();
+    }
+    return collector.finish();
+  }
+
+  /**
+   * Reduces the records of one key, in key order as the shuffle would give
+   * them, to the file of the reducer the key is partitioned to.
+   */
+  private void reduce(String name, Iterator<Text> values) throws IOException {
+    // The reducer and the output format use only the sample of the key.
+    SamplePositionKey key =
+        new SamplePositionKey(name, ContigIndex.UNKNOWN, 0);
+    String file = String.format("part-%05d",
+        partitioner.getPartition(key, null, job.getNumReduceTasks()));
+    final RecordWriter<SamplePositionKey, Text> writer =
+        new CustomMultiOutputFormat<SamplePositionKey, Text>()
+            .getRecordWriter(null, job, file, reporter);
+    try {
+      new GvcfBlockMergeReducer().reduce(key, values,
+          new OutputCollector<SamplePositionKey, Text>() {
+            public void collect(SamplePositionKey key, Text value)
+                throws IOException {
+              writer.write(key, value);
+            }
+          }, reporter);
+    } finally {
+      writer.close(reporter);
+    }
+  }
+
+  /**
+   * Adds a statistic's PENDING_COUNT value to the total of its input.
+   */
+  private void addCount(Text name, Text value) throws IOException {
+    byte[] bytes = value.getBytes();
+    int length = value.getLength();
+    if (0 == length || GvcfBlockCompressor.PENDING_COUNT != bytes[0]) {
+      throw new IOException("Unexpected map output for key " + name);
+    }
+    String count = Text.decode(bytes, 1, length - 1);
+    int tab = count.lastIndexOf('\t');
+    String path = count.substring(0, tab);
+    long n = Long.parseLong(count.substring(tab + 1));
+    synchronized (statistics) {
+      Map<String, Long> totals = statistics.get(name.toString());
+      if (totals == null) {
+        totals = new TreeMap<String, Long>();
+        statistics.put(name.toString(), totals);
+      }
+      Long total = totals.get(path);
+      totals.put(path, (total == null ? 0 : total) + n);
+    }
+  }
+
+  /**
+   * @return a PENDING_COUNT value for each input's total
+   */
+  private static List<Text> counts(Map<String, Long> totals) {
+    List<Text> values = new ArrayList<Text>();
+    for (Map.Entry<String, Long> total : totals.entrySet()) {
+      byte[] count =
+          VcfRecord.bytesOf(total.getKey() + "\t" + total.getValue());
+      Text value = new Text(new byte[] {GvcfBlockCompressor.PENDING_COUNT});
+      value.append(count, 0, count.length);
+      values.add(value);
+    }
+    return values;
+  }
+
+  private File spillFile() throws IOException {
+    spillDir.mkdirs();
+    spills.incrementAndGet();
+    return File.createTempFile("run", ".out", spillDir);
+  }
+
+  /**
+   * Merges runs into one spilled run, which takes their place in the
+   * order of the sample's runs.
+   */
+  private Run merge(List<Run> runs) throws IOException {
+    Run run = new Run();
+    Merger merger = new Merger(runs);
+    try {
+      run.spill(spillFile(), merger);
+    } finally {
+      merger.close();
+    }
+    for (Run merged : runs) {
+      release(merged);
+    }
+    return run;
+  }
+
+  /**
+   * Frees the memory or the file of a run once it has been reduced.
+   */
+  private void release(Run run) {
+    buffered.addAndGet(-run.held);
+    run.held = 0;
+    run.delete();
+  }
+
+  /**
+   * Collects a task's records of its sample into runs, which are spilled
+   * whenever they fill the task's share of the buffer, and totals the
+   * statistics.
+   */
+  private final class RunCollector
+      implements OutputCollector<SamplePositionKey, Text> {
+    private final Text sample;
+    private final List<Run> runs = new ArrayList<Run>();
+    private Run run = new Run();
+
+    RunCollector(String sample) {
+      this.sample = new Text(sample);
+    }
+
+    public void collect(SamplePositionKey key, Text value)
+        throws IOException {
+      if (!sample.equals(key.getSample())) {
+        addCount(key.getSample(), value);
+        return;
+      }
+      run.add(key, value);
+      if (taskBufferSize <= run.size()) {
+        run.spill(spillFile());
+        runs.add(run);
+        run = new Run();
+      }
+    }
+
+    /**
+     * @return the runs, the last held in memory if it fits in what is left
+     *     of the buffer for finished tasks
+     */
+    List<Run> finish() throws IOException {
+      if (0 < run.count) {
+        long size = run.size();
+        if (finishedBufferSize < buffered.addAndGet(size)) {
+          buffered.addAndGet(-size);
+          run.spill(spillFile());
+        } else {
+          run.held = size;
+          run.sort();
+        }
+        runs.add(run);
+      }
+      return runs;
+    }
+  }
+
+  /**
+   * The records of one sample from one task, in a buffer that holds each
+   * record's contig, position and order followed by its value, and which is
+   * written to a local file when spilled.  The sample is the task's.
+   */
+  private static final class Run {
+    private DataOutputBuffer buffer = new DataOutputBuffer();
+    private int[] offsets = new int[64];
+    private int count;
+    private boolean sorted = true;
+    private File spill;
+    // The bytes of the buffer counted against finishedBufferSize.
+    long held;
+
+    void add(SamplePositionKey key, Text value) throws IOException {
+      int offset = buffer.getLength();
+      buffer.writeInt(key.getContig());
+      buffer.writeLong(key.getPosition());
+      buffer.writeLong(key.getOrder());
+      value.write(buffer);
+      if (0 < count
+          && 0 < compare(buffer.getData(), offsets[count - 1], offset)) {
+        sorted = false;
+      }
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, 2 * count);
+      }
+      offsets[count++] = offset;
+    }
+
+    /**
+     * @return the bytes held in memory
+     */
+    long size() {
+      return buffer.getData().length + 4L * offsets.length;
+    }
+
+    /**
+     * Sorts the records by key, unless they were collected in order, as
+     * they are from inputs sorted like the dataset header.
+     */
+    void sort() {
+      if (sorted) {
+        return;
+      }
+      final byte[] data = buffer.getData();
+      Integer[] order = new Integer[count];
+      for (int i = 0; i < count; i++) {
+        order[i] = offsets[i];
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return Run.compare(data, a, b);
+        }
+      });
+      for (int i = 0; i < count; i++) {
+        offsets[i] = order[i];
+      }
+      sorted = true;
+    }
+
+    void spill(File file) throws IOException {
+      sort();
+      spill = file;
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      try {
+        byte[] data = buffer.getData();
+        for (int i = 0; i < count; i++) {
+          int offset = offsets[i];
+          int valueLength = WritableComparator.readVInt(data, offset + 20);
+          out.write(data, offset, 20
+              + WritableUtils.decodeVIntSize(data[offset + 20]) + valueLength);
+        }
+      } finally {
+        out.close();
+      }
+      buffer = null;
+      offsets = null;
+    }
+
+    /**
+     * Spills the records of a merge rather than those of the buffer.
+     */
+    void spill(File file, Merger merger) throws IOException {
+      buffer = null;
+      offsets = null;
+      spill = file;
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+      try {
+        while (merger.hasNext()) {
+          Text value = merger.next();
+          out.writeInt(merger.contig);
+          out.writeLong(merger.position);
+          out.writeLong(merger.order);
+          value.write(out);
+          count++;
+        }
+      } finally {
+        out.close();
+      }
+    }
+
+    void delete() {
+      buffer = null;
+      offsets = null;
+      if (spill != null) {
+        spill.delete();
+      }
+    }
+
+    /**
+     * Compares the keys of the records at two offsets in data.
+     */
+    static int compare(byte[] data, int a, int b) {
+      int contigA = WritableComparator.readInt(data, a);
+      int contigB = WritableComparator.readInt(data, b);
+      if (contigA != contigB) {
+        return contigA < contigB ? -1 : 1;
+      }
+      long positionA = WritableComparator.readLong(data, a + 4);
+      long positionB = WritableComparator.readLong(data, b + 4);
+      if (positionA != positionB) {
+        return positionA < positionB ? -1 : 1;
+      }
+      long orderA = WritableComparator.readLong(data, a + 12);
+      long orderB = WritableComparator.readLong(data, b + 12);
+      if (orderA != orderB) {
+        return orderA < orderB ? -1 : 1;
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * Reads the records of a run back in key order.
+   */
+  private static final class RunReader {
+    // The run's place among the sample's, which orders equal keys.
+    final int index;
+    int contig;
+    long position;
+    long order;
+    final Text value = new Text();
+
+    private final Run run;
+    private final DataInputBuffer memory = new DataInputBuffer();
+    private final DataInputStream file;
+    private int next;
+
+    RunReader(Run run, int index) throws IOException {
+      this.run = run;
+      this.index = index;
+      file = run.spill == null ? null : new DataInputStream(
+          new BufferedInputStream(new FileInputStream(run.spill), 1 << 16));
+    }
+
+    boolean next() throws IOException {
+      if (run.count == next) {
+        return false;
+      }
+      DataInputStream in = file;
+      if (in == null) {
+        int offset = run.offsets[next];
+        memory.reset(run.buffer.getData(), offset,
+            run.buffer.getLength() - offset);
+        in = memory;
+      }
+      next++;
+      contig = in.readInt();
+      position = in.readLong();
+      order = in.readLong();
+      value.readFields(in);
+      return true;
+    }
+
+    void close() throws IOException {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+
+  /**
+   * Merges runs into one stream of values in key order.  Each value, and
+   * the contig, position and order of its key, are valid until the next is
+   * read.
+   */
+  private static final class Merger implements Iterator<Text> {
+    int contig;
+    long position;
+    long order;
+    private final List<RunReader> readers = new ArrayList<RunReader>();
+    private final PriorityQueue<RunReader> queue;
+    private final Text value = new Text();
+
+    Merger(List<Run> runs) throws IOException {
+      queue = new PriorityQueue<RunReader>(runs.size(),
+          new Comparator<RunReader>() {
+            public int compare(RunReader a, RunReader b) {
+              if (a.contig != b.contig) {
+                return a.contig < b.contig ? -1 : 1;
+              }
+              if (a.position != b.position) {
+                return a.position < b.position ? -1 : 1;
+              }
+              if (a.order != b.order) {
+                return a.order < b.order ? -1 : 1;
+              }
+              return a.index - b.index;
+            }
+          });
+      try {
+        for (Run run : runs) {
+          RunReader reader = new RunReader(run, readers.size());
+          readers.add(reader);
+          if (reader.next()) {
+            queue.add(reader);
+          }
+        }
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+
+    public boolean hasNext() {
+      return !queue.isEmpty();
+    }
+
+    public Text next() {
+      RunReader reader = queue.poll();
+      if (reader == null) {
+        throw new NoSuchElementException();
+      }
+      contig = reader.contig;
+      position = reader.position;
+      order = reader.order;
+      value.set(reader.value);
+      try {
+        if (reader.next()) {
+          queue.add(reader);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return value;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    void close() throws IOException {
+      for (RunReader reader : readers) {
+        reader.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the lines of a split of a memory-mapped file, keyed by their
+   * byte offsets like LineRecordReader.  The split must start at a line.
+   */
+  private static class MappedLineRecordReader
+      implements RecordReader<LongWritable, Text> {
+    private final long start;
+    private final long end;
+    private final LineReader in;
+    private long pos;
+
+    MappedLineRecordReader(JobConf job, File file, FileSplit split)
+        throws IOException {
+      start = split.getStart();
+      end = start + split.getLength();
+      pos = start;
+      // The mapping stays valid once the channel is closed.
+      FileInputStream stream = new FileInputStream(file);
+      ByteBuffer buffer;
+      try {
+        buffer = stream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+            start, split.getLength());
+      } finally {
+        stream.close();
+      }
+      in = new LineReader(new ByteBufferInputStream(buffer), job);
+    }
+
+    public boolean next(LongWritable key, Text value) throws IOException {
+      if (end <= pos) {
+        return false;
+      }
+      int length = in.readLine(value);
+      if (0 == length) {
+        return false;
+      }
+      key.set(pos);
+      pos += length;
+      return true;
+    }
+
+    public LongWritable createKey() {
+      return new LongWritable();
+    }
+
+    public Text createValue() {
+      return new Text();
+    }
+
+    public long getPos() {
+      return pos;
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+
+    public float getProgress() {
+      return end == start ? 1 : (pos - start) / (float) (end - start);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return 0 == len ? 0 : -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Collects the counters of every task.
+   */
+  private static class LocalReporter implements Reporter {
+    final Counters counters = new Counters();
+
+    public void setStatus(String status) {
+    }
+
+    public void progress() {
+    }
+
+    public Counters.Counter getCounter(Enum<?> name) {
+      return counters.findCounter(name);
+    }
+
+    public Counters.Counter getCounter(String group, String name) {
+      return counters.findCounter(group, name);
+    }
+
+    public void incrCounter(Enum<?> key, long amount) {
+      counters.incrCounter(key, amount);
+    }
+
+    public void incrCounter(String group, String counter, long amount) {
+      counters.incrCounter(group, counter, amount);
+    }
+
+    public InputSplit getInputSplit() {
+      throw new UnsupportedOperationException("no input split");
+    }
+
+    public float getProgress() {
+      return 0;
+    }
+  }
+
+  /**
+   * Has the tasks write straight to the output directory, as each runs
+   * once and there is nothing to commit.
+   */
+  static class InPlaceOutputCommitter extends OutputCommitter {
+    public void setupJob(JobContext context) {
+    }
+
+    public void setupTask(TaskAttemptContext context) {
+    }
+
+    public boolean needsTaskCommit(TaskAttemptContext context) {
+      return false;
+    }
+
+    public void commitTask(TaskAttemptContext context) {
+    }
+
+    public void abortTask(TaskAttemptContext context) {
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new GvcfLocalRunner(), args));
+  }
+}
@@ -0,0 +1,125 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.MapRunnable;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * GvcfMapper is a native replacement for gvcf-mapper.py.
+ *
+ * It runs in the same jar as CustomMultiOutputFormat and produces the same
+ * key/value pairs as the streaming mapper without piping every record
+ * through a Python process:
+ *   hadoop jar /path/to/your/hadoop-streaming-*.jar \
+ *   -libjars /home/deflaux/custom.jar \
+ *   -outputformat com.custom.CustomMultiOutputFormat \
+ *   -D mapred.map.runner.class=com.custom.GvcfMapper \
+ *   -mapper com.custom.GvcfMapper \
+ *   -reducer org.apache.hadoop.mapred.lib.IdentityReducer \
+ *   -input inputpath \
+ *   -output outputpath
+ *
+ * Run as the map runner too, it writes the counts of a split that has no
+ * records, zeros, as the script does.  With Hadoop's MapRunner it is only
+ * given a collector with the first record, so such a split writes nothing.
+ **/
+
+public class GvcfMapper extends MapReduceBase
+    implements Mapper<Object, Text, Text, Text>,
+        MapRunnable<Object, Text, Text, Text> {
+
+  static final String INPUT_FILE_KEY = "map.input.file";
+  static final Pattern SAMPLE_ID_PATTERN =
+      Pattern.compile("/(LP\\d{7}-DNA_\\w\\d{2})/");
+  // What the Python script prints for a sample ID it could not find.
+  static final String UNKNOWN_SAMPLE_ID = "None";
+
+  private GvcfBlockCompressor compressor;
+  private boolean countStatistics;
+  private OutputCollector<Text, Text> output;
+
+  /**
+   * @return the sample ID embedded in the input path
+   */
+  static String sampleIdForPath(String path) {
+    if (path != null) {
+      Matcher match = SAMPLE_ID_PATTERN.matcher(path);
+      if (match.find()) {
+        return match.group(1);
+      }
+    }
+    return UNKNOWN_SAMPLE_ID;
+  }
+
+  @Override
+  public void configure(JobConf job) {
+    compressor = new GvcfBlockCompressor(
+        sampleIdForPath(job.get(INPUT_FILE_KEY)));
+    countStatistics = CustomMultiOutputFormat.isCountingStatistics(job);
+  }
+
+  public void map(Object key, Text value,
+      OutputCollector<Text, Text> output, Reporter reporter)
+      throws IOException {
+    if (this.output == null) {
+      start(output, reporter);
+    }
+    compressor.process(value.getBytes(), 0, value.getLength(), output);
+  }
+
+  private void start(OutputCollector<Text, Text> output, Reporter reporter) {
+    if (countStatistics) {
+      compressor.setCounters(reporter);
+    }
+    this.output = output;
+  }
+
+  /**
+   * Maps every record of the split, having taken the collector first.
+   */
+  public void run(RecordReader<Object, Text> input,
+      OutputCollector<Text, Text> output, Reporter reporter)
+      throws IOException {
+    try {
+      start(output, reporter);
+      Object key = input.createKey();
+      Text value = input.createValue();
+      while (input.next(key, value)) {
+        map(key, value, output, reporter);
+      }
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (output != null) {
+      compressor.finish(output);
+    }
+  }
+}
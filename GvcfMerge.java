@@ -0,0 +1,239 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.util.LineReader;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * GvcfMerge merges coordinate-sorted single-sample gVCFs, such as the
+ * per-sample output of GvcfDriver, into one multi-sample VCF of variant
+ * sites:
+ *   hadoop jar /home/deflaux/custom.jar com.custom.GvcfMerge \
+ *   [-D custom.multioutputformat.tabix=true] \
+ *   output.vcf[.gz] input1 input2 ...
+ *
+ * The inputs are read in parallel streams merged by a heap keyed on the
+ * contig and position of each one's next record, and GvcfMerger builds the
+ * sites.  Each input holds one sample, named in its #CHROM line, and the
+ * samples appear in the order of the inputs.  A sample may be split over
+ * several inputs, such as the part files CustomMultiOutputFormat writes
+ * when it reopens a sample's file, which the heap merges as one.  Inputs
+ * that VcfPathFilter skips, such as the statistics, are ignored.  An
+ * output name ending in .gz is written as BGZF.  GvcfMergeDriver does the
+ * same as a MapReduce job.
+ **/
+
+public class GvcfMerge extends Configured implements Tool {
+
+  /**
+   * One input and its next record.
+   */
+  private static class Source {
+    final int sample;
+    final LineReader in;
+    final Text line = new Text();
+    final VcfRecord record = new VcfRecord();
+    int contig;
+    long position;
+
+    Source(int sample, LineReader in) {
+      this.sample = sample;
+      this.in = in;
+    }
+
+    /**
+     * @return false at the end of the input
+     */
+    boolean advance(ContigIndex contigs) throws IOException {
+      while (0 < in.readLine(line)) {
+        record.parse(line.getBytes(), 0, line.getLength());
+        if (record.isBlank() || record.isHeader()) {
+          continue;
+        }
+        if (record.fieldCount() <= INFO) {
+          throw new IOException("not a VCF record: " + record);
+        }
+        contig = contigs.indexOf(record.getBytes(), record.fieldStart(CHROM),
+            record.fieldLength(CHROM));
+        position = record.longField(POS);
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final Comparator<Source> SOURCE_ORDER =
+      new Comparator<Source>() {
+        public int compare(Source a, Source b) {
+          if (a.contig != b.contig) {
+            return a.contig < b.contig ? -1 : 1;
+          }
+          if (a.position != b.position) {
+            return a.position < b.position ? -1 : 1;
+          }
+          return a.sample - b.sample;
+        }
+      };
+
+  /**
+   * @return a line reader over a file, decompressed according to its name
+   */
+  static LineReader openLines(Configuration conf, Path file)
+      throws IOException {
+    FileSystem fs = file.getFileSystem(conf);
+    InputStream in = fs.open(file);
+    CompressionCodec codec = new CompressionCodecFactory(conf).getCodec(file);
+    if (codec != null) {
+      in = codec.createInputStream(in);
+    }
+    return new LineReader(in, conf);
+  }
+
+  /**
+   * @return the sample named by the #CHROM line of a single-sample VCF
+   */
+  static String readSampleName(Configuration conf, Path file)
+      throws IOException {
+    LineReader in = openLines(conf, file);
+    try {
+      Text line = new Text();
+      while (0 < in.readLine(line)) {
+        if (0 < line.getLength() && '#' != line.getBytes()[0]) {
+          break;
+        }
+        if (line.toString().startsWith("#CHROM")) {
+          String[] fields = line.toString().trim().split("\t");
+          if (GENOTYPE + 1 != fields.length) {
+            throw new IOException("not a single-sample VCF: " + file);
+          }
+          return fields[GENOTYPE];
+        }
+      }
+      throw new IOException("no #CHROM line in " + file);
+    } finally {
+      in.close();
+    }
+  }
+
+  public int run(String[] args) throws Exception {
+    if (2 > args.length) {
+      System.err.println(
+          "Usage: GvcfMerge [generic options] <output> <input>...");
+      ToolRunner.printGenericCommandUsage(System.err);
+      return -1;
+    }
+    JobConf conf = new JobConf(getConf(), GvcfMerge.class);
+
+    // The column of each input's sample.
+    List<Path> inputs = new ArrayList<Path>();
+    List<Integer> inputSamples = new ArrayList<Integer>();
+    Map<String, Integer> columns = new HashMap<String, Integer>();
+    StringBuilder header = new StringBuilder();
+    PathFilter filter = new GvcfMergeDriver.VcfPathFilter();
+    for (int i = 1; i < args.length; i++) {
+      Path input = new Path(args[i]);
+      if (!filter.accept(input)) {
+        continue;
+      }
+      String name = readSampleName(conf, input);
+      Integer column = columns.get(name);
+      if (column == null) {
+        column = columns.size();
+        columns.put(name, column);
+        header.append(0 == column ? "" : "\t").append(name);
+      }
+      inputs.add(input);
+      inputSamples.add(column);
+    }
+    if (inputs.isEmpty()) {
+      throw new IOException("no inputs");
+    }
+    int samples = columns.size();
+
+    Path output = new Path(args[0]);
+    final RecordWriter<Text, Text> writer = output.getName().endsWith(".gz")
+        ? CustomMultiOutputFormat.<Text, Text>newBgzfRecordWriter(conf,
+            output, Reporter.NULL, "\t")
+        : new CustomMultiOutputFormat.LineRecordWriter<Text, Text>(
+            output.getFileSystem(conf).create(output));
+    OutputCollector<Text, Text> collector = new OutputCollector<Text, Text>() {
+      public void collect(Text key, Text value) throws IOException {
+        writer.write(key, value);
+      }
+    };
+
+    ContigIndex contigs = ContigIndex.forDataset();
+    GvcfMerger merger = new GvcfMerger(samples, new Text(header.toString()),
+        conf.getInt(GvcfMergeDriver.BATCH_SIZE, 1024));
+    PriorityQueue<Source> heap =
+        new PriorityQueue<Source>(inputs.size(), SOURCE_ORDER);
+    try {
+      for (int i = 0; i < inputs.size(); i++) {
+        Source source = new Source(inputSamples.get(i),
+            openLines(conf, inputs.get(i)));
+        if (source.advance(contigs)) {
+          heap.add(source);
+        } else {
+          source.in.close();
+        }
+      }
+      while (!heap.isEmpty()) {
+        Source source = heap.poll();
+        merger.add(source.sample, source.record, collector);
+        if (source.advance(contigs)) {
+          heap.add(source);
+        } else {
+          source.in.close();
+        }
+      }
+      merger.finish(collector);
+    } finally {
+      for (Source source : heap) {
+        source.in.close();
+      }
+      writer.close(Reporter.NULL);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new GvcfMerge(), args));
+  }
+}
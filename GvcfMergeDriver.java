@@ -0,0 +1,160 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * GvcfMergeDriver runs GvcfMerge as a MapReduce job partitioned by
+ * genomic region:
+ *   hadoop jar /home/deflaux/custom.jar com.custom.GvcfMergeDriver \
+ *   [-D custom.gvcfmerge.region.size=10000000] \
+ *   'gvcfoutputpath/*' outputpath
+ *
+ * GvcfMergeMapper sends each record to the regions it overlaps, keyed by a
+ * SamplePositionKey whose sample is the region, so that the partitioner
+ * and comparators of GvcfDriver deliver each region's records to
+ * GvcfMergeReducer in coordinate order.  Each region is written to
+ * <contig>/<start>/part-NNNNN with the header of all the samples.  Listed
+ * in order, without all but the first header, the regions make up the
+ * same VCF that GvcfMerge writes.
+ **/
+
+public class GvcfMergeDriver extends Configured implements Tool {
+
+  /**
+   * The number of positions in each region.
+   */
+  public static final String REGION_SIZE = "custom.gvcfmerge.region.size";
+
+  /**
+   * The number of merged lines passed on together.
+   */
+  public static final String BATCH_SIZE = "custom.gvcfmerge.batch.size";
+
+  // The tab separated sample names, in column order.  Set by the driver.
+  static final String SAMPLES = "custom.gvcfmerge.samples";
+
+  static final long DEFAULT_REGION_SIZE = 10000000;
+
+  /**
+   * Skips hidden files, tabix indexes, and the statistics that
+   * CustomMultiOutputFormat writes beside the samples, e.g. ref_count/.
+   */
+  public static class VcfPathFilter implements PathFilter {
+    public boolean accept(Path path) {
+      String name = path.getName();
+      Path parent = path.getParent();
+      return !name.startsWith("_") && !name.startsWith(".")
+          && !name.endsWith(".tbi")
+          && !GvcfBlockCompressor.isStatistic(name)
+          && (parent == null
+              || !GvcfBlockCompressor.isStatistic(parent.getName()));
+    }
+  }
+
+  /**
+   * @return the files matched by pattern, and those in matched directories
+   */
+  private static List<Path> listInputs(JobConf job, Path pattern)
+      throws IOException {
+    FileSystem fs = pattern.getFileSystem(job);
+    PathFilter filter = new VcfPathFilter();
+    List<Path> inputs = new ArrayList<Path>();
+    FileStatus[] matches = fs.globStatus(pattern, filter);
+    if (matches == null) {
+      throw new IOException("input path does not exist: " + pattern);
+    }
+    for (FileStatus match : matches) {
+      if (!match.isDir()) {
+        inputs.add(match.getPath());
+        continue;
+      }
+      for (FileStatus file : fs.listStatus(match.getPath(), filter)) {
+        if (!file.isDir()) {
+          inputs.add(file.getPath());
+        }
+      }
+    }
+    return inputs;
+  }
+
+  public int run(String[] args) throws Exception {
+    if (2 != args.length) {
+      System.err.println(
+          "Usage: GvcfMergeDriver [generic options] <input> <output>");
+      ToolRunner.printGenericCommandUsage(System.err);
+      return -1;
+    }
+
+    JobConf job = new JobConf(getConf(), GvcfMergeDriver.class);
+    job.setJobName("gvcf-merge");
+
+    // A sample split over several files, such as the part files written
+    // when CustomMultiOutputFormat reopens a sample, has one column.
+    StringBuilder samples = new StringBuilder();
+    Set<String> names = new HashSet<String>();
+    for (Path input : listInputs(job, new Path(args[0]))) {
+      String name = GvcfMerge.readSampleName(job, input);
+      if (names.add(name)) {
+        samples.append(0 == samples.length() ? "" : "\t").append(name);
+      }
+    }
+    if (names.isEmpty()) {
+      throw new IOException("no inputs in " + args[0]);
+    }
+    job.set(SAMPLES, samples.toString());
+
+    job.setInputFormat(VcfInputFormat.class);
+    job.setMapperClass(GvcfMergeMapper.class);
+    job.setMapOutputKeyClass(SamplePositionKey.class);
+    job.setMapOutputValueClass(Text.class);
+    job.setPartitionerClass(SamplePartitioner.class);
+    job.setOutputKeyComparatorClass(SamplePositionKey.Comparator.class);
+    job.setOutputValueGroupingComparator(
+        SamplePositionKey.SampleGroupingComparator.class);
+    job.setReducerClass(GvcfMergeReducer.class);
+    job.setOutputKeyClass(Text.class);
+    job.setOutputValueClass(Text.class);
+    job.setOutputFormat(MergedVcfOutputFormat.class);
+
+    FileInputFormat.setInputPaths(job, new Path(args[0]));
+    FileInputFormat.setInputPathFilter(job, VcfPathFilter.class);
+    FileOutputFormat.setOutputPath(job, new Path(args[1]));
+
+    return JobClient.runJob(job).isSuccessful() ? 0 : 1;
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.exit(ToolRunner.run(new GvcfMergeDriver(), args));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * GvcfMergeMapper sends each record of a single-sample gVCF to every
+ * region it overlaps, so that blocks and deletions that cross a region
+ * boundary still cover the sites after it.
+ *
+ * The key's sample is the region, <contig>/<start>, and its position is
+ * that of the record, or the region start for a record that starts in an
+ * earlier region.  The key's order and the value's prefix are the sample's
+ * column in the merged VCF.
+ **/
+
+public class GvcfMergeMapper extends MapReduceBase
+    implements Mapper<LongWritable, Text, SamplePositionKey, Text> {
+
+  private static final byte[] END_KEY = bytesOf("END");
+
+  private final ContigIndex contigs = ContigIndex.forDataset();
+  private final VcfRecord record = new VcfRecord();
+  private final SamplePositionKey outputKey = new SamplePositionKey();
+  private final Text region = new Text();
+  private final Text outputValue = new Text();
+
+  private long regionSize;
+  private int sample;
+  private byte[] prefix;
+
+  /**
+   * @return the name of the region starting at start, which sorts by
+   *     start within a contig
+   */
+  static String regionName(String contig, long start) {
+    return String.format("%s/%010d", contig, start);
+  }
+
+  /**
+   * @return the first position of the region holding position
+   */
+  static long regionStart(long position, long regionSize) {
+    return (position - 1) / regionSize * regionSize + 1;
+  }
+
+  @Override
+  public void configure(JobConf job) {
+    regionSize = job.getLong(GvcfMergeDriver.REGION_SIZE,
+        GvcfMergeDriver.DEFAULT_REGION_SIZE);
+    String path = job.get(GvcfMapper.INPUT_FILE_KEY);
+    try {
+      String name = GvcfMerge.readSampleName(job, new Path(path));
+      sample = Arrays.asList(job.get(GvcfMergeDriver.SAMPLES).split("\t"))
+          .indexOf(name);
+      if (sample < 0) {
+        throw new IOException("sample " + name + " of " + path
+            + " was not listed by GvcfMergeDriver");
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    prefix = bytesOf(sample + "\t");
+  }
+
+  public void map(LongWritable key, Text value,
+      OutputCollector<SamplePositionKey, Text> output, Reporter reporter)
+      throws IOException {
+    record.parse(value.getBytes(), 0, value.getLength());
+    if (record.isBlank() || record.isHeader()) {
+      return;
+    }
+    if (record.fieldCount() <= INFO) {
+      throw new IOException("not a VCF record: " + record);
+    }
+    int contig = contigs.indexOf(record.getBytes(), record.fieldStart(CHROM),
+        record.fieldLength(CHROM));
+    if (ContigIndex.UNKNOWN == contig) {
+      throw new IOException("contig is not in the dataset header: " + record);
+    }
+    long position = record.longField(POS);
+    long end = position + record.fieldLength(REF) - 1;
+    if (record.findInfo(END_KEY)) {
+      end = Math.max(end, parseLong(record.getBytes(),
+          record.infoValueStart(), record.infoValueEnd()));
+    }
+
+    outputValue.set(prefix);
+    outputValue.append(record.getBytes(), record.getStart(),
+        record.getLength());
+    String contigName = contigs.nameOf(contig);
+    for (long start = regionStart(position, regionSize); start <= end;
+        start += regionSize) {
+      region.set(regionName(contigName, start));
+      outputKey.set(region, contig, Math.max(position, start), sample);
+      output.collect(outputKey, outputValue);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * GvcfMergeReducer merges the records of one region, as sent by
+ * GvcfMergeMapper, into multi-sample VCF lines keyed by the region.
+ **/
+
+public class GvcfMergeReducer extends MapReduceBase
+    implements Reducer<SamplePositionKey, Text, Text, Text> {
+
+  private final VcfRecord record = new VcfRecord();
+  private final Text region = new Text();
+  private GvcfMerger merger;
+  private long regionSize;
+
+  @Override
+  public void configure(JobConf job) {
+    regionSize = job.getLong(GvcfMergeDriver.REGION_SIZE,
+        GvcfMergeDriver.DEFAULT_REGION_SIZE);
+    int samples = job.get(GvcfMergeDriver.SAMPLES).split("\t").length;
+    merger = new GvcfMerger(samples, region,
+        job.getInt(GvcfMergeDriver.BATCH_SIZE, 1024));
+  }
+
+  public void reduce(SamplePositionKey key, Iterator<Text> values,
+      OutputCollector<Text, Text> output, Reporter reporter)
+      throws IOException {
+    region.set(key.getSample());
+    // The first key is at or after the region start, and in its region.
+    merger.startRegion(key.getContig(),
+        GvcfMergeMapper.regionStart(key.getPosition(), regionSize), output);
+    while (values.hasNext()) {
+      Text value = values.next();
+      byte[] bytes = value.getBytes();
+      int tab = 0;
+      while ('\t' != bytes[tab]) {
+        tab++;
+      }
+      int sample = (int) VcfRecord.parseLong(bytes, 0, tab);
+      record.parse(bytes, tab + 1, value.getLength() - tab - 1);
+      merger.add(sample, record, output);
+    }
+    merger.finish(output);
+  }
+}
@@ -0,0 +1,381 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.OutputCollector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * GvcfMerger turns the records of N single-sample gVCFs, added in
+ * coordinate order, into the variant sites of a multi-sample VCF.
+ *
+ * A site is a position at which at least one sample has a variant.  There
+ * each sample's genotype is taken from its variant, or from the reference
+ * or no-call block that covers the site, and is ./. otherwise; that
+ * includes positions inside a sample's own deletion.  A block is a record
+ * with an INFO END or a '.' or <NON_REF> ALT.  Blocks are expanded to
+ * every site they cover and so are clipped at the sites, and a block's
+ * genotype is used only if all its alleles are 0 or missing.
+ *
+ * The variants at a site are merged as bcftools merge does: REF is the
+ * longest of their REFs, the other samples' alleles are extended by the
+ * rest of it, and the genotypes are renumbered to the combined ALTs.  ID
+ * is the first known one, QUAL the highest, and FILTER and INFO are left
+ * empty.  FORMAT is GT.
+ *
+ * Only the last record of each sample is kept, so memory is proportional
+ * to the number of samples.  Sites are collected into batches of lines
+ * that are passed on together.
+ **/
+
+final class GvcfMerger {
+
+  private static final byte[] MISSING = bytesOf(".");
+  private static final byte[] NON_REF = bytesOf("<NON_REF>");
+  private static final byte[] END_KEY = bytesOf("END");
+  private static final byte[] GT_KEY = bytesOf("GT");
+  private static final byte[] NO_CALL = bytesOf("./.");
+  private static final byte[] SITE_FIELDS = bytesOf("\t.\t.\tGT");
+
+  private final ContigIndex contigs = ContigIndex.forDataset();
+  private final int sampleCount;
+  private final Text key;
+
+  // Each sample's latest record and the interval it covers.
+  private final VcfRecord[] active;
+  private final boolean[] hasActive;
+  private final boolean[] activeIsBlock;
+  private final int[] activeContig;
+  private final long[] activeStart;
+  private final long[] activeEnd;
+
+  // The variants starting at the current site.
+  private final VcfRecord[] variants;
+  private final boolean[] hasVariant;
+  private final int[] variantSamples;
+  private int variantCount;
+  private final int[][] alleleMaps;
+  private final List<String> alts = new ArrayList<String>();
+
+  private int siteContig = -1;
+  private long sitePosition;
+  private int minContig = -1;
+  private long minPosition;
+
+  private final Text[] batch;
+  private int batchLength;
+  private byte[] lineBuffer = new byte[1024];
+  private int lineLength;
+
+  /**
+   * @param key the key of every line passed on
+   * @param batchSize the number of lines passed on together
+   */
+  GvcfMerger(int sampleCount, Text key, int batchSize) {
+    this.sampleCount = sampleCount;
+    this.key = key;
+    active = new VcfRecord[sampleCount];
+    variants = new VcfRecord[sampleCount];
+    for (int i = 0; i < sampleCount; i++) {
+      active[i] = new VcfRecord();
+      variants[i] = new VcfRecord();
+    }
+    hasActive = new boolean[sampleCount];
+    activeIsBlock = new boolean[sampleCount];
+    activeContig = new int[sampleCount];
+    activeStart = new long[sampleCount];
+    activeEnd = new long[sampleCount];
+    hasVariant = new boolean[sampleCount];
+    variantSamples = new int[sampleCount];
+    alleleMaps = new int[sampleCount][];
+    batch = new Text[Math.max(1, batchSize)];
+    for (int i = 0; i < batch.length; i++) {
+      batch[i] = new Text();
+    }
+  }
+
+  /**
+   * Finishes the current region and starts one at the given position.
+   * Records that start before it only cover sites; they were merged with
+   * the previous region.
+   */
+  void startRegion(int contig, long start, OutputCollector<Text, Text> output)
+      throws IOException {
+    finish(output);
+    Arrays.fill(hasActive, false);
+    siteContig = -1;
+    minContig = contig;
+    minPosition = start;
+  }
+
+  /**
+   * Adds the next record of a sample.  Records must be added in the order
+   * of the dataset header's contigs and then by position.
+   */
+  void add(int sample, VcfRecord record, OutputCollector<Text, Text> output)
+      throws IOException {
+    if (record.isBlank() || record.isHeader()) {
+      return;
+    }
+    if (record.fieldCount() <= INFO) {
+      throw new IOException("not a VCF record: " + record);
+    }
+    int contig = contigs.indexOf(record.getBytes(), record.fieldStart(CHROM),
+        record.fieldLength(CHROM));
+    if (ContigIndex.UNKNOWN == contig) {
+      throw new IOException("contig is not in the dataset header: " + record);
+    }
+    long position = record.longField(POS);
+    boolean inRegion = contig > minContig
+        || (contig == minContig && position >= minPosition);
+
+    if (inRegion && (contig != siteContig || position != sitePosition)) {
+      if (contig < siteContig
+          || (contig == siteContig && position < sitePosition)) {
+        throw new IOException("records are not sorted: " + record);
+      }
+      flushSite();
+      if (batchLength == batch.length) {
+        flushBatch(output);
+      }
+      siteContig = contig;
+      sitePosition = position;
+    }
+
+    boolean block = isBlock(record);
+    active[sample].copyFrom(record);
+    hasActive[sample] = true;
+    activeIsBlock[sample] = block;
+    activeContig[sample] = contig;
+    activeStart[sample] = position;
+    activeEnd[sample] = position + record.fieldLength(REF) - 1;
+    if (block && record.findInfo(END_KEY)) {
+      activeEnd[sample] = parseLong(record.getBytes(),
+          record.infoValueStart(), record.infoValueEnd());
+    }
+
+    if (inRegion && !block && !hasVariant[sample]) {
+      variants[sample].copyFrom(record);
+      hasVariant[sample] = true;
+      variantSamples[variantCount++] = sample;
+    }
+  }
+
+  /**
+   * Passes on the current site and any batched lines.
+   */
+  void finish(OutputCollector<Text, Text> output) throws IOException {
+    flushSite();
+    flushBatch(output);
+  }
+
+  private static boolean isBlock(VcfRecord record) {
+    return record.fieldEquals(ALT, MISSING) || record.fieldEquals(ALT, NON_REF)
+        || record.findInfo(END_KEY);
+  }
+
+  private void flushBatch(OutputCollector<Text, Text> output)
+      throws IOException {
+    for (int i = 0; i < batchLength; i++) {
+      output.collect(key, batch[i]);
+    }
+    batchLength = 0;
+  }
+
+  private void flushSite() throws IOException {
+    if (0 == variantCount) {
+      return;
+    }
+
+    // REF is the longest of the variants' REFs.
+    VcfRecord first = variants[variantSamples[0]];
+    VcfRecord longest = first;
+    for (int i = 1; i < variantCount; i++) {
+      VcfRecord variant = variants[variantSamples[i]];
+      if (variant.fieldLength(REF) > longest.fieldLength(REF)) {
+        longest = variant;
+      }
+    }
+    String ref = field(longest, REF);
+
+    alts.clear();
+    for (int i = 0; i < variantCount; i++) {
+      int sample = variantSamples[i];
+      VcfRecord variant = variants[sample];
+      String sampleRef = field(variant, REF);
+      if (!ref.startsWith(sampleRef)) {
+        throw new IOException("REF " + sampleRef + " does not match " + ref
+            + ": " + variant);
+      }
+      String suffix = ref.substring(sampleRef.length());
+      String[] sampleAlts = field(variant, ALT).split(",");
+      int[] map = new int[sampleAlts.length + 1];
+      for (int j = 0; j < sampleAlts.length; j++) {
+        String alt = sampleAlts[j];
+        if (!alt.startsWith("<") && !"*".equals(alt)) {
+          alt += suffix;
+        }
+        int index = alts.indexOf(alt);
+        if (index < 0) {
+          index = alts.size();
+          alts.add(alt);
+        }
+        map[j + 1] = index + 1;
+      }
+      alleleMaps[sample] = map;
+    }
+
+    lineLength = 0;
+    append(first.getBytes(), first.fieldStart(CHROM), first.fieldEnd(CHROM));
+    append((byte) '\t');
+    byte[] position = bytesOf(Long.toString(sitePosition));
+    append(position, 0, position.length);
+    append((byte) '\t');
+    appendId();
+    append((byte) '\t');
+    append(longest.getBytes(), longest.fieldStart(REF), longest.fieldEnd(REF));
+    append((byte) '\t');
+    for (int i = 0; i < alts.size(); i++) {
+      if (0 < i) {
+        append((byte) ',');
+      }
+      byte[] alt = bytesOf(alts.get(i));
+      append(alt, 0, alt.length);
+    }
+    append((byte) '\t');
+    appendQual();
+    append(SITE_FIELDS, 0, SITE_FIELDS.length);
+
+    for (int sample = 0; sample < sampleCount; sample++) {
+      append((byte) '\t');
+      if (hasVariant[sample]) {
+        appendGenotype(variants[sample], alleleMaps[sample]);
+      } else if (hasActive[sample] && activeIsBlock[sample]
+          && activeContig[sample] == siteContig
+          && activeStart[sample] <= sitePosition
+          && sitePosition <= activeEnd[sample]) {
+        appendGenotype(active[sample], null);
+      } else {
+        append(NO_CALL, 0, NO_CALL.length);
+      }
+    }
+    batch[batchLength++].set(lineBuffer, 0, lineLength);
+
+    for (int i = 0; i < variantCount; i++) {
+      hasVariant[variantSamples[i]] = false;
+    }
+    variantCount = 0;
+  }
+
+  private void appendId() {
+    for (int i = 0; i < variantCount; i++) {
+      VcfRecord variant = variants[variantSamples[i]];
+      if (!variant.fieldEquals(ID, MISSING)) {
+        append(variant.getBytes(), variant.fieldStart(ID),
+            variant.fieldEnd(ID));
+        return;
+      }
+    }
+    append(MISSING, 0, MISSING.length);
+  }
+
+  private void appendQual() throws IOException {
+    VcfRecord best = null;
+    double bestQual = 0;
+    for (int i = 0; i < variantCount; i++) {
+      VcfRecord variant = variants[variantSamples[i]];
+      if (!variant.fieldEquals(QUAL, MISSING)) {
+        double qual = variant.doubleField(QUAL);
+        if (best == null || qual > bestQual) {
+          best = variant;
+          bestQual = qual;
+        }
+      }
+    }
+    if (best == null) {
+      append(MISSING, 0, MISSING.length);
+    } else {
+      append(best.getBytes(), best.fieldStart(QUAL), best.fieldEnd(QUAL));
+    }
+  }
+
+  /**
+   * Appends a record's GT with its alleles renumbered by map, or, for a
+   * block, as is if it holds no ALT alleles.  Anything else is ./.
+   */
+  private void appendGenotype(VcfRecord record, int[] map) {
+    if (!record.findSampleValue(GT_KEY)
+        || record.sampleValueStart() == record.sampleValueEnd()) {
+      append(NO_CALL, 0, NO_CALL.length);
+      return;
+    }
+
+    byte[] bytes = record.getBytes();
+    int mark = lineLength;
+    int i = record.sampleValueStart();
+    int end = record.sampleValueEnd();
+    while (i < end) {
+      byte b = bytes[i];
+      if ('0' <= b && b <= '9') {
+        int allele = 0;
+        while (i < end && '0' <= bytes[i] && bytes[i] <= '9') {
+          allele = allele * 10 + bytes[i] - '0';
+          i++;
+        }
+        if (map == null ? 0 != allele : allele >= map.length) {
+          lineLength = mark;
+          append(NO_CALL, 0, NO_CALL.length);
+          return;
+        }
+        byte[] digits = bytesOf(Integer.toString(
+            map == null ? allele : map[allele]));
+        append(digits, 0, digits.length);
+      } else {
+        append(b);
+        i++;
+      }
+    }
+  }
+
+  private static String field(VcfRecord record, int field)
+      throws IOException {
+    return Text.decode(record.getBytes(), record.fieldStart(field),
+        record.fieldLength(field));
+  }
+
+  private void append(byte b) {
+    if (lineLength == lineBuffer.length) {
+      lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+    }
+    lineBuffer[lineLength++] = b;
+  }
+
+  private void append(byte[] bytes, int from, int to) {
+    int n = to - from;
+    if (lineBuffer.length < lineLength + n) {
+      lineBuffer = Arrays.copyOf(lineBuffer,
+          Math.max(lineLength + n, lineBuffer.length * 2));
+    }
+    System.arraycopy(bytes, from, lineBuffer, lineLength, n);
+    lineLength += n;
+  }
+}
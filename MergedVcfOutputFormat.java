@@ -0,0 +1,50 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+
+/**
+ * MergedVcfOutputFormat writes the multi-sample VCF lines of
+ * GvcfMergeReducer to a file per region key, as CustomMultiOutputFormat
+ * does per sample, with every sample in the header's #CHROM line.
+ **/
+
+public class MergedVcfOutputFormat extends CustomMultiOutputFormat<Text, Text> {
+
+  private Text samples;
+
+  @Override
+  public RecordWriter<Text, Text> getRecordWriter(FileSystem fs, JobConf job,
+      String name, Progressable progress) throws IOException {
+    samples = new Text(job.get(GvcfMergeDriver.SAMPLES));
+    return super.getRecordWriter(fs, job, name, progress);
+  }
+
+  /**
+   * LineRecordWriter puts the key in the header, so the key written is
+   * the sample names.
+   */
+  @Override
+  protected Text generateActualKey(Text key, Text value) {
+    return samples;
+  }
+}
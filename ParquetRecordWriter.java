@@ -0,0 +1,412 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import com.custom.CustomMultiOutputFormat.WriterCounter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.codec.CompressionCodecNotSupportedException;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * ParquetRecordWriter writes VCF lines as typed Parquet columns, so that
+ * the output can be loaded into BigQuery without reparsing the text.
+ *
+ * Each line is parsed in place and written as one row of SCHEMA.  END is
+ * taken from INFO for blocks, and otherwise is the last position of REF.
+ * The '.' of a missing ALT, QUAL or FILTER, and missing INFO keys and
+ * genotypes, are written as nulls.  The key, normally the sample ID, is
+ * written as the SAMPLE column.  Each writer's file holds one key's
+ * records, so the key is only converted on the first write.
+ *
+ * Rows are buffered in memory until a row group is full, so a task needs
+ * up to a row group of memory for every writer it holds open.  Row groups
+ * are DEFAULT_ROW_GROUP_SIZE unless PARQUET_ROW_GROUP_SIZE says otherwise,
+ * and when MAX_OPEN_WRITERS is set they are capped so that that many
+ * writers fit in half the heap.
+ *
+ * Parquet is only referenced from this class, so that the jars are only
+ * needed on the classpath when PARQUET_OUTPUT is set.
+ **/
+
+class ParquetRecordWriter<K, V> implements RecordWriter<K, V> {
+
+  private static final Log LOG = LogFactory.getLog(ParquetRecordWriter.class);
+
+  static final MessageType SCHEMA = MessageTypeParser.parseMessageType(
+      "message gvcf {\n"
+      + "  required binary SAMPLE (UTF8);\n"
+      + "  required binary CHROM (UTF8);\n"
+      + "  required int64 POS;\n"
+      + "  required int64 END;\n"
+      + "  required binary REF (UTF8);\n"
+      + "  optional binary ALT (UTF8);\n"
+      + "  optional double QUAL;\n"
+      + "  optional binary FILTER (UTF8);\n"
+      + "  optional double MQ;\n"
+      + "  optional int64 MQ0;\n"
+      + "  optional int64 DP;\n"
+      + "  optional binary GT (UTF8);\n"
+      + "}\n");
+
+  // Far below Parquet's 128MB, since a task may hold a writer per sample.
+  static final int DEFAULT_ROW_GROUP_SIZE = 8 * 1024 * 1024;
+  // The smallest row group the cap for MAX_OPEN_WRITERS goes down to.
+  private static final int MIN_ROW_GROUP_SIZE = 1024 * 1024;
+
+  // The footer metadata key under which the VCF header is kept.
+  static final String VCF_HEADER_KEY = "vcf.header";
+
+  private static final byte[] MISSING = bytesOf(".");
+  private static final byte[] END_KEY = bytesOf("END");
+  private static final byte[] MQ_KEY = bytesOf("MQ");
+  private static final byte[] MQ0_KEY = bytesOf("MQ0");
+  private static final byte[] DP_KEY = bytesOf("DP");
+  private static final byte[] GT_KEY = bytesOf("GT");
+
+  private final FileSystem fs;
+  private final Path file;
+  private final ParquetWriter<Row> writer;
+  private final Row row = new Row();
+
+  private long recordsWritten;
+  private long uncompressedBytes;
+  private long compressedBytes = -1;
+  private long writes;
+  private long writeNanos;
+  private long closeNanos;
+
+  /**
+   * @param rowGroupSize the number of bytes buffered before a row group
+   *     is written
+   * @param dictionary whether to dictionary encode the columns.  Parquet
+   *     1.8 has no per-column setting, but falls back to plain encoding for
+   *     a column whose dictionary outgrows its page or does not shrink the
+   *     first page, such as POS.
+   */
+  ParquetRecordWriter(Configuration conf, Path file, CompressionCodecName codec,
+      int rowGroupSize, boolean dictionary) throws IOException {
+    this.fs = file.getFileSystem(conf);
+    this.file = file;
+    this.writer = new Builder(file)
+        .withConf(conf)
+        .withWriteMode(ParquetFileWriter.Mode.CREATE)
+        .withCompressionCodec(codec)
+        .withRowGroupSize(rowGroupSize)
+        .withDictionaryEncoding(dictionary)
+        .withWriterVersion(ParquetProperties.WriterVersion.PARQUET_1_0)
+        .build();
+  }
+
+  /**
+   * @param codecClass the Hadoop codec of the output, or null to leave it
+   *     uncompressed
+   * @return a writer configured by the PARQUET_ options of job
+   */
+  static <K, V> ParquetRecordWriter<K, V> create(JobConf job, Path file,
+      Class<? extends CompressionCodec> codecClass) throws IOException {
+    CompressionCodecName codec = CompressionCodecName.UNCOMPRESSED;
+    if (codecClass != null) {
+      try {
+        codec = CompressionCodecName.fromCompressionCodec(codecClass);
+      } catch (CompressionCodecNotSupportedException e) {
+        // e.g. DefaultCodec, the default, which is deflate like gzip.
+        LOG.warn(codecClass.getName() + " is not a Parquet codec, using gzip");
+        codec = CompressionCodecName.GZIP;
+      }
+    }
+    return new ParquetRecordWriter<K, V>(job, file, codec,
+        getRowGroupSize(job, Runtime.getRuntime().maxMemory()),
+        job.getBoolean(CustomMultiOutputFormat.PARQUET_DICTIONARY, true));
+  }
+
+  /**
+   * @param heap the bytes of memory the task may use
+   * @return PARQUET_ROW_GROUP_SIZE, capped at an even share of half of
+   *     heap between MAX_OPEN_WRITERS writers if that is set
+   */
+  static int getRowGroupSize(JobConf job, long heap) {
+    int size = job.getInt(CustomMultiOutputFormat.PARQUET_ROW_GROUP_SIZE,
+        DEFAULT_ROW_GROUP_SIZE);
+    int maxOpenWriters =
+        job.getInt(CustomMultiOutputFormat.MAX_OPEN_WRITERS, 0);
+    if (0 < maxOpenWriters) {
+      long share = Math.max(MIN_ROW_GROUP_SIZE, heap / 2 / maxOpenWriters);
+      if (share < size) {
+        LOG.info("Row groups of " + share + " bytes rather than " + size
+            + " so that " + maxOpenWriters + " writers fit in the heap");
+        size = (int) share;
+      }
+    }
+    return size;
+  }
+
+  public synchronized void write(K key, V value) throws IOException {
+    if (key == null || value == null) {
+      return;
+    }
+    boolean timed =
+        0 == ++writes % CustomMultiOutputFormat.WRITE_TIMING_INTERVAL;
+    long started = timed ? System.nanoTime() : 0;
+    if (0 == row.sample.getLength()) {
+      row.sample.set(key.toString());
+    }
+    row.set(value);
+    if (!row.record.isBlank()) {
+      if (row.record.fieldCount() <= INFO) {
+        throw new IOException("not a VCF record: " + row.record);
+      }
+      writer.write(row);
+      recordsWritten++;
+      uncompressedBytes += row.record.getLength() + 1;
+    }
+    if (timed) {
+      writeNanos += (System.nanoTime() - started)
+          * CustomMultiOutputFormat.WRITE_TIMING_INTERVAL;
+    }
+  }
+
+  public synchronized void close(Reporter reporter) throws IOException {
+    long started = System.nanoTime();
+    writer.close();
+    closeNanos = System.nanoTime() - started;
+    compressedBytes = fs.getFileStatus(file).getLen();
+    if (reporter != null) {
+      reporter.incrCounter(WriterCounter.RECORDS_WRITTEN, recordsWritten);
+      reporter.incrCounter(WriterCounter.UNCOMPRESSED_BYTES, uncompressedBytes);
+      reporter.incrCounter(WriterCounter.COMPRESSED_BYTES, compressedBytes);
+      reporter.incrCounter(WriterCounter.WRITE_MILLIS, writeNanos / 1000000);
+      reporter.incrCounter(WriterCounter.CLOSE_MILLIS, closeNanos / 1000000);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return recordsWritten + " records, "
+        + uncompressedBytes + " bytes as text, "
+        + compressedBytes + " bytes as Parquet, "
+        + writeNanos / 1000000 + " ms in write, "
+        + closeNanos / 1000000 + " ms in close";
+  }
+
+  private static class Builder extends ParquetWriter.Builder<Row, Builder> {
+    Builder(Path file) {
+      super(file);
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<Row> getWriteSupport(Configuration conf) {
+      return new RowWriteSupport();
+    }
+  }
+
+  /**
+   * One record to write: the key and the parsed VCF line.
+   */
+  private static class Row {
+    private final Text sample = new Text();
+    private final Text line = new Text();
+    private final VcfRecord record = new VcfRecord();
+
+    void set(Object value) {
+      if (value instanceof Text) {
+        Text text = (Text) value;
+        record.parse(text.getBytes(), 0, text.getLength());
+      } else {
+        line.set(value.toString());
+        record.parse(line.getBytes(), 0, line.getLength());
+      }
+    }
+  }
+
+  /**
+   * Writes each Row's fields straight from the line's bytes.
+   */
+  private static class RowWriteSupport extends WriteSupport<Row> {
+    private RecordConsumer consumer;
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+      Map<String, String> metadata = new HashMap<String, String>();
+      metadata.put(VCF_HEADER_KEY, CustomMultiOutputFormat.DATASET_HEADER);
+      return new WriteContext(SCHEMA, metadata);
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+      this.consumer = recordConsumer;
+    }
+
+    /**
+     * Parses every field before starting the message, so that an invalid
+     * record leaves the consumer between messages.
+     */
+    @Override
+    public void write(Row row) {
+      VcfRecord record = row.record;
+      byte[] bytes = record.getBytes();
+      long pos;
+      long end;
+      boolean hasQual = !isMissing(record, QUAL);
+      double qual = 0;
+      boolean hasMq;
+      double mq = 0;
+      boolean hasMq0;
+      long mq0 = 0;
+      boolean hasDp;
+      long dp = 0;
+      try {
+        pos = record.longField(POS);
+        end = pos + record.fieldLength(REF) - 1;
+        if (findInfoValue(record, END_KEY)) {
+          end = VcfRecord.parseLong(bytes, record.infoValueStart(),
+              record.infoValueEnd());
+        }
+        if (hasQual) {
+          qual = record.doubleField(QUAL);
+        }
+        hasMq = findInfoValue(record, MQ_KEY);
+        if (hasMq) {
+          mq = VcfRecord.parseDouble(bytes, record.infoValueStart(),
+              record.infoValueEnd());
+        }
+        hasMq0 = findInfoValue(record, MQ0_KEY);
+        if (hasMq0) {
+          mq0 = VcfRecord.parseLong(bytes, record.infoValueStart(),
+              record.infoValueEnd());
+        }
+        hasDp = findInfoValue(record, DP_KEY);
+        if (hasDp) {
+          dp = VcfRecord.parseLong(bytes, record.infoValueStart(),
+              record.infoValueEnd());
+        }
+      } catch (IOException e) {
+        throw new IllegalArgumentException("invalid VCF record: " + record, e);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("invalid VCF record: " + record, e);
+      }
+
+      consumer.startMessage();
+      addBinary(0, "SAMPLE", row.sample.getBytes(), 0,
+          row.sample.getLength());
+      addField(1, "CHROM", record, CHROM);
+      addLong(2, "POS", pos);
+      addLong(3, "END", end);
+      addField(4, "REF", record, REF);
+      addOptionalField(5, "ALT", record, ALT);
+      if (hasQual) {
+        addDouble(6, "QUAL", qual);
+      }
+      addOptionalField(7, "FILTER", record, FILTER);
+      if (hasMq) {
+        addDouble(8, "MQ", mq);
+      }
+      if (hasMq0) {
+        addLong(9, "MQ0", mq0);
+      }
+      if (hasDp) {
+        addLong(10, "DP", dp);
+      }
+      addGenotype(11, "GT", record);
+      consumer.endMessage();
+    }
+
+    /**
+     * @return whether the INFO key has a value other than '.'; see
+     *     VcfRecord.findInfo
+     */
+    private static boolean findInfoValue(VcfRecord record, byte[] key) {
+      return record.findInfo(key) && !record.infoValueEquals(MISSING);
+    }
+
+    private static boolean isMissing(VcfRecord record, int field) {
+      return record.fieldEquals(field, MISSING);
+    }
+
+    private void addBinary(int index, String name, byte[] bytes, int offset,
+        int length) {
+      consumer.startField(name, index);
+      consumer.addBinary(Binary.fromReusedByteArray(bytes, offset, length));
+      consumer.endField(name, index);
+    }
+
+    private void addField(int index, String name, VcfRecord record,
+        int field) {
+      addBinary(index, name, record.getBytes(), record.fieldStart(field),
+          record.fieldLength(field));
+    }
+
+    private void addOptionalField(int index, String name, VcfRecord record,
+        int field) {
+      if (!isMissing(record, field)) {
+        addField(index, name, record, field);
+      }
+    }
+
+    private void addLong(int index, String name, long value) {
+      consumer.startField(name, index);
+      consumer.addLong(value);
+      consumer.endField(name, index);
+    }
+
+    private void addDouble(int index, String name, double value) {
+      consumer.startField(name, index);
+      consumer.addDouble(value);
+      consumer.endField(name, index);
+    }
+
+    /**
+     * Adds the sample's value for the GT key of FORMAT, if it has one.
+     */
+    private void addGenotype(int index, String name, VcfRecord record) {
+      if (!record.findSampleValue(GT_KEY)) {
+        return;
+      }
+      int start = record.sampleValueStart();
+      int length = record.sampleValueEnd() - start;
+      if (0 == length || (1 == length && '.' == record.getBytes()[start])) {
+        return;
+      }
+      addBinary(index, name, record.getBytes(), start, length);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+/**
+ * SamplePartitioner sends every record of a sample to the same reducer by
+ * hashing the sample ID alone.  The hash is Text's, so samples land on the
+ * same reducers as they did with Text keys and the HashPartitioner.
+ **/
+
+public class SamplePartitioner<V> implements Partitioner<SamplePositionKey, V> {
+
+  public void configure(JobConf job) {
+  }
+
+  public int getPartition(SamplePositionKey key, V value, int numPartitions) {
+    return (key.getSample().hashCode() & Integer.MAX_VALUE) % numPartitions;
+  }
+}
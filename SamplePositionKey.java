@@ -0,0 +1,211 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * SamplePositionKey is the map output key for coordinate-sorted
+ * per-sample output: a sample ID, the index of a contig in the
+ * ContigIndex and a position on that contig.  An order, the record's
+ * offset in its input, breaks ties between records at the same position.
+ *
+ * It is serialized as the sample Text followed by a 4 byte contig index,
+ * an 8 byte position and an 8 byte order, so that the registered
+ * Comparator can sort the shuffle on the serialized bytes without
+ * deserializing keys.  toString
+ * returns the sample ID, which is what CustomMultiOutputFormat uses to
+ * name files and label the VCF header.
+ **/
+
+public class SamplePositionKey
+    implements WritableComparable<SamplePositionKey> {
+
+  private final Text sample = new Text();
+  private int contig;
+  private long position;
+  private long order;
+
+  public SamplePositionKey() {
+  }
+
+  public SamplePositionKey(String sample, int contig, long position) {
+    set(sample, contig, position);
+  }
+
+  public void set(String sample, int contig, long position) {
+    this.sample.set(sample);
+    this.contig = contig;
+    this.position = position;
+    this.order = 0;
+  }
+
+  public void set(Text sample, int contig, long position, long order) {
+    this.sample.set(sample);
+    this.contig = contig;
+    this.position = position;
+    this.order = order;
+  }
+
+  public Text getSample() {
+    return sample;
+  }
+
+  public int getContig() {
+    return contig;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public long getOrder() {
+    return order;
+  }
+
+  public void write(DataOutput out) throws IOException {
+    sample.write(out);
+    out.writeInt(contig);
+    out.writeLong(position);
+    out.writeLong(order);
+  }
+
+  public void readFields(DataInput in) throws IOException {
+    sample.readFields(in);
+    contig = in.readInt();
+    position = in.readLong();
+    order = in.readLong();
+  }
+
+  public int compareTo(SamplePositionKey other) {
+    int cmp = sample.compareTo(other.sample);
+    if (0 != cmp) {
+      return cmp;
+    }
+    if (contig != other.contig) {
+      return contig < other.contig ? -1 : 1;
+    }
+    if (position != other.position) {
+      return position < other.position ? -1 : 1;
+    }
+    if (order != other.order) {
+      return order < other.order ? -1 : 1;
+    }
+    return 0;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof SamplePositionKey)) {
+      return false;
+    }
+    return 0 == compareTo((SamplePositionKey) o);
+  }
+
+  @Override
+  public int hashCode() {
+    return ((sample.hashCode() * 31 + contig) * 31 + (int) position) * 31
+        + (int) order;
+  }
+
+  @Override
+  public String toString() {
+    return sample.toString();
+  }
+
+  /**
+   * Sorts by sample, then contig index, position and order, on serialized
+   * keys.
+   */
+  public static class Comparator extends WritableComparator {
+    public Comparator() {
+      super(SamplePositionKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1,
+        byte[] b2, int s2, int l2) {
+      try {
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        int sl1 = readVInt(b1, s1);
+        int sl2 = readVInt(b2, s2);
+        int cmp = compareBytes(b1, s1 + n1, sl1, b2, s2 + n2, sl2);
+        if (0 != cmp) {
+          return cmp;
+        }
+        int c1 = readInt(b1, s1 + n1 + sl1);
+        int c2 = readInt(b2, s2 + n2 + sl2);
+        if (c1 != c2) {
+          return c1 < c2 ? -1 : 1;
+        }
+        long p1 = readLong(b1, s1 + n1 + sl1 + 4);
+        long p2 = readLong(b2, s2 + n2 + sl2 + 4);
+        if (p1 != p2) {
+          return p1 < p2 ? -1 : 1;
+        }
+        long o1 = readLong(b1, s1 + n1 + sl1 + 12);
+        long o2 = readLong(b2, s2 + n2 + sl2 + 12);
+        if (o1 != o2) {
+          return o1 < o2 ? -1 : 1;
+        }
+        return 0;
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+  }
+
+  /**
+   * Groups keys by sample only, so that each reduce call sees all of one
+   * sample's records in coordinate order.
+   */
+  public static class SampleGroupingComparator extends WritableComparator {
+    public SampleGroupingComparator() {
+      super(SamplePositionKey.class);
+    }
+
+    @Override
+    public int compare(byte[] b1, int s1, int l1,
+        byte[] b2, int s2, int l2) {
+      try {
+        int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+        int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+        return compareBytes(b1, s1 + n1, readVInt(b1, s1),
+            b2, s2 + n2, readVInt(b2, s2));
+      } catch (IOException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public int compare(WritableComparable a, WritableComparable b) {
+      return ((SamplePositionKey) a).sample.compareTo(
+          ((SamplePositionKey) b).sample);
+    }
+  }
+
+  static {
+    WritableComparator.define(SamplePositionKey.class, new Comparator());
+  }
+}
@@ -0,0 +1,136 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.MapRunnable;
+import org.apache.hadoop.mapred.Mapper;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * SortedGvcfMapper emits the same records as GvcfMapper but keys them by
+ * SamplePositionKey, so that the shuffle sorts each sample's records by
+ * the contig order of the dataset header and then by position.
+ *
+ * Inputs may be split.  A mapper that starts part way through a file, and
+ * the block still open at the end of every split, leave their records
+ * pending for GvcfBlockMergeReducer, which must be used as the reducer.
+ * The input offset of each record, the LongWritable key of VcfInputFormat,
+ * is the key's order.  Records on contigs missing from the header all
+ * share ContigIndex.UNKNOWN, so they are keyed at position 0 and stay in
+ * input order rather than interleaving contigs by position.
+ *
+ * It is also the map runner, so that a split without records, such as
+ * one holding only a header, still passes on its counts.
+ **/
+
+public class SortedGvcfMapper extends MapReduceBase
+    implements Mapper<LongWritable, Text, SamplePositionKey, Text>,
+        MapRunnable<LongWritable, Text, SamplePositionKey, Text> {
+
+  static final String INPUT_START_KEY = "map.input.start";
+
+  private final ContigIndex contigs = ContigIndex.forDataset();
+  private final VcfRecord record = new VcfRecord();
+  private final SamplePositionKey outputKey = new SamplePositionKey();
+
+  private String path;
+  private GvcfBlockCompressor compressor;
+  private boolean countStatistics;
+  private OutputCollector<SamplePositionKey, Text> output;
+
+  // Turns the compressor's Text keys into SamplePositionKeys.
+  private final OutputCollector<Text, Text> keyer =
+      new OutputCollector<Text, Text>() {
+        public void collect(Text sample, Text line) throws IOException {
+          int offset = GvcfBlockCompressor.lineOffset(line);
+          if (0 <= offset) {
+            record.parse(line.getBytes(), offset, line.getLength() - offset);
+          }
+          if (0 <= offset && POS < record.fieldCount()) {
+            int contig = contigs.indexOf(record.getBytes(),
+                record.fieldStart(CHROM), record.fieldLength(CHROM));
+            outputKey.set(sample, contig,
+                ContigIndex.UNKNOWN == contig ? 0 : record.longField(POS),
+                compressor.getEmittedOrder());
+          } else {
+            outputKey.set(sample, ContigIndex.UNKNOWN, 0, 0);
+          }
+          output.collect(outputKey, line);
+        }
+      };
+
+  @Override
+  public void configure(JobConf job) {
+    path = job.get(GvcfMapper.INPUT_FILE_KEY);
+    compressor = new GvcfBlockCompressor(GvcfMapper.sampleIdForPath(path));
+    if (0 != job.getLong(INPUT_START_KEY, 0)) {
+      compressor.startMidFile();
+    }
+    countStatistics = CustomMultiOutputFormat.isCountingStatistics(job);
+  }
+
+  public void map(LongWritable key, Text value,
+      OutputCollector<SamplePositionKey, Text> output, Reporter reporter)
+      throws IOException {
+    if (this.output == null) {
+      start(output, reporter);
+    }
+    compressor.process(value.getBytes(), 0, value.getLength(), key.get(),
+        keyer);
+  }
+
+  private void start(OutputCollector<SamplePositionKey, Text> output,
+      Reporter reporter) {
+    if (countStatistics) {
+      compressor.setCounters(reporter);
+    }
+    this.output = output;
+  }
+
+  /**
+   * Maps every record of the split, having taken the collector first.
+   */
+  public void run(RecordReader<LongWritable, Text> input,
+      OutputCollector<SamplePositionKey, Text> output, Reporter reporter)
+      throws IOException {
+    try {
+      start(output, reporter);
+      LongWritable key = input.createKey();
+      Text value = input.createValue();
+      while (input.next(key, value)) {
+        map(key, value, output, reporter);
+      }
+    } finally {
+      close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (output != null) {
+      compressor.finishSplit(String.valueOf(path), keyer);
+    }
+  }
+}
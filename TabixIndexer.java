@@ -0,0 +1,288 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.custom.VcfRecord.*;
+
+/**
+ * TabixIndexer builds a .tbi index for a BGZF compressed VCF while it is
+ * being written, which saves running tabix over the finished file.
+ *
+ * Records are added with their uncompressed start and end positions in the
+ * BgzfOutputStream.  Those are turned into virtual offsets when the index
+ * is written, after the data stream has been closed.  The records must be
+ * grouped by CHROM and sorted by POS; if they are not, no index is written.
+ *
+ * The format is described in
+ * http://samtools.github.io/hts-specs/tabix.pdf
+ **/
+
+class TabixIndexer {
+
+  private static final Log LOG = LogFactory.getLog(TabixIndexer.class);
+
+  private static final byte[] MAGIC = {'T', 'B', 'I', 1};
+  private static final int FORMAT_VCF = 2;
+  private static final int COL_SEQ = 1;
+  private static final int COL_BEG = 2;
+  private static final int COL_END = 0;
+  private static final int META_CHAR = '#';
+  private static final int LINEAR_SHIFT = 14;
+  private static final byte[] END = VcfRecord.bytesOf("END");
+
+  private final BgzfOutputStream data;
+  private final FileSystem fs;
+  private final Path indexFile;
+  private final Progressable progress;
+
+  private final VcfRecord record = new VcfRecord();
+  private final List<String> names = new ArrayList<String>();
+  private final List<ReferenceIndex> references = new ArrayList<ReferenceIndex>();
+  private final Map<String, ReferenceIndex> byName =
+      new HashMap<String, ReferenceIndex>();
+  private ReferenceIndex current;
+  private byte[] currentName = new byte[0];
+  private long lastBeg;
+  private long unplaced;
+  private boolean sorted = true;
+
+  /**
+   * Per-contig bins of (start, end) position pairs and the linear index.
+   * Positions are uncompressed offsets until resolved.
+   */
+  private static class ReferenceIndex {
+    final Map<Integer, long[]> bins = new HashMap<Integer, long[]>();
+    final Map<Integer, Integer> binSizes = new HashMap<Integer, Integer>();
+    long[] linear = new long[0];
+
+    void addChunk(int bin, long start, long end) {
+      long[] chunks = bins.get(bin);
+      Integer size = binSizes.get(bin);
+      if (chunks == null) {
+        chunks = new long[8];
+        size = 0;
+      } else if (chunks[size - 1] == start) {
+        // Contiguous with the previous record in this bin.
+        chunks[size - 1] = end;
+        return;
+      }
+      if (size + 2 > chunks.length) {
+        chunks = Arrays.copyOf(chunks, chunks.length * 2);
+      }
+      chunks[size] = start;
+      chunks[size + 1] = end;
+      bins.put(bin, chunks);
+      binSizes.put(bin, size + 2);
+    }
+
+    void addLinear(long beg, long end, long start) {
+      int first = (int) (beg >> LINEAR_SHIFT);
+      int last = (int) ((end - 1) >> LINEAR_SHIFT);
+      if (linear.length <= last) {
+        int length = linear.length;
+        linear = Arrays.copyOf(linear, Math.max(last + 1, length * 2));
+        Arrays.fill(linear, length, linear.length, -1);
+      }
+      for (int i = first; i <= last; i++) {
+        if (-1 == linear[i]) {
+          linear[i] = start;
+        }
+      }
+    }
+  }
+
+  TabixIndexer(BgzfOutputStream data, FileSystem fs, Path indexFile,
+      Progressable progress) {
+    this.data = data;
+    this.fs = fs;
+    this.indexFile = indexFile;
+    this.progress = progress;
+  }
+
+  /**
+   * Adds one line written to the data stream.
+   *
+   * @param value the line as passed to the record writer
+   * @param start the uncompressed position of the start of the line
+   * @param end the uncompressed position just past the line's newline
+   */
+  void add(Object value, long start, long end) throws IOException {
+    if (!sorted) {
+      return;
+    }
+    if (value instanceof Text) {
+      Text text = (Text) value;
+      record.parse(text.getBytes(), 0, text.getLength());
+    } else {
+      byte[] bytes = VcfRecord.bytesOf(value.toString());
+      record.parse(bytes, 0, bytes.length);
+    }
+    if (record.isBlank() || record.isHeader()) {
+      return;
+    }
+    if (record.fieldCount() <= REF) {
+      // Not a VCF record, e.g. one of the mapper's counts.
+      unplaced++;
+      return;
+    }
+
+    // Zero based, half open, as tabix wants.
+    long beg = record.longField(POS) - 1;
+    long stop = beg + Math.max(1, record.fieldLength(REF));
+    if (INFO < record.fieldCount() && record.findInfo(END)) {
+      stop = Math.max(stop, parseLong(record.getBytes(),
+          record.infoValueStart(), record.infoValueEnd()));
+    }
+
+    if (!record.fieldEquals(CHROM, currentName)) {
+      String name = new String(record.getBytes(), record.fieldStart(CHROM),
+          record.fieldLength(CHROM), "UTF-8");
+      if (byName.containsKey(name)) {
+        unsorted("contig " + name + " is not contiguous");
+        return;
+      }
+      current = new ReferenceIndex();
+      currentName = VcfRecord.bytesOf(name);
+      names.add(name);
+      references.add(current);
+      byName.put(name, current);
+      lastBeg = beg;
+    } else if (beg < lastBeg) {
+      unsorted("position " + (beg + 1) + " follows " + (lastBeg + 1));
+      return;
+    }
+    lastBeg = beg;
+
+    current.addChunk(reg2bin(beg, stop), start, end);
+    current.addLinear(beg, stop, start);
+  }
+
+  /**
+   * @return the uncompressed position the next line will be written at
+   */
+  long position() {
+    return data.getUncompressedOffset();
+  }
+
+  private void unsorted(String reason) {
+    LOG.warn("Not writing " + indexFile + ", the records are not sorted: "
+        + reason);
+    sorted = false;
+    references.clear();
+  }
+
+  /**
+   * Computes the smallest bin containing [beg, end).
+   */
+  static int reg2bin(long beg, long end) {
+    --end;
+    if (beg >> 14 == end >> 14) {
+      return (int) (((1 << 15) - 1) / 7 + (beg >> 14));
+    }
+    if (beg >> 17 == end >> 17) {
+      return (int) (((1 << 12) - 1) / 7 + (beg >> 17));
+    }
+    if (beg >> 20 == end >> 20) {
+      return (int) (((1 << 9) - 1) / 7 + (beg >> 20));
+    }
+    if (beg >> 23 == end >> 23) {
+      return (int) (((1 << 6) - 1) / 7 + (beg >> 23));
+    }
+    if (beg >> 26 == end >> 26) {
+      return (int) (((1 << 3) - 1) / 7 + (beg >> 26));
+    }
+    return 0;
+  }
+
+  /**
+   * Writes the index.  The data stream must already be closed.
+   */
+  void close() throws IOException {
+    if (!sorted) {
+      return;
+    }
+    ByteArrayOutputStream names = new ByteArrayOutputStream();
+    for (String name : this.names) {
+      names.write(VcfRecord.bytesOf(name));
+      names.write(0);
+    }
+
+    OutputStream out = new BgzfOutputStream(fs.create(indexFile, progress));
+    try {
+      out.write(MAGIC);
+      writeInt(out, references.size());
+      writeInt(out, FORMAT_VCF);
+      writeInt(out, COL_SEQ);
+      writeInt(out, COL_BEG);
+      writeInt(out, COL_END);
+      writeInt(out, META_CHAR);
+      writeInt(out, 0);  // lines to skip
+      writeInt(out, names.size());
+      names.writeTo(out);
+
+      for (ReferenceIndex reference : references) {
+        writeInt(out, reference.bins.size());
+        for (Map.Entry<Integer, long[]> bin : reference.bins.entrySet()) {
+          long[] chunks = bin.getValue();
+          int size = reference.binSizes.get(bin.getKey());
+          writeInt(out, bin.getKey());
+          writeInt(out, size / 2);
+          for (int i = 0; i < size; i++) {
+            writeLong(out, data.getVirtualOffset(chunks[i]));
+          }
+        }
+        writeInt(out, reference.linear.length);
+        long previous = 0;
+        for (long position : reference.linear) {
+          if (-1 != position) {
+            previous = data.getVirtualOffset(position);
+          }
+          writeLong(out, previous);
+        }
+      }
+      writeLong(out, unplaced);
+    } finally {
+      out.close();
+    }
+  }
+
+  private static void writeInt(OutputStream out, int v) throws IOException {
+    out.write(v);
+    out.write(v >>> 8);
+    out.write(v >>> 16);
+    out.write(v >>> 24);
+  }
+
+  private static void writeLong(OutputStream out, long v) throws IOException {
+    writeInt(out, (int) v);
+    writeInt(out, (int) (v >>> 32));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.JobConfigurable;
+import org.apache.hadoop.mapred.LineRecordReader;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+
+/**
+ * VcfInputFormat reads the records of plain or bgzipped VCFs, skipping the
+ * header lines.
+ *
+ * Plain files are split on line boundaries like TextInputFormat, and BGZF
+ * files are split on block boundaries by BgzfLineRecordReader; the key is
+ * the byte offset or BGZF virtual offset of each line.  Other compressed
+ * files are read whole.
+ **/
+
+public class VcfInputFormat extends FileInputFormat<LongWritable, Text>
+    implements JobConfigurable {
+
+  private CompressionCodecFactory compressionCodecs = null;
+
+  public void configure(JobConf conf) {
+    compressionCodecs = new CompressionCodecFactory(conf);
+  }
+
+  @Override
+  protected boolean isSplitable(FileSystem fs, Path file) {
+    if (compressionCodecs.getCodec(file) == null) {
+      return true;
+    }
+    try {
+      return BgzfLineRecordReader.isBgzf(fs, file);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @return the input files of job, as they are listed for getSplits
+   */
+  FileStatus[] listInputs(JobConf job) throws IOException {
+    return listStatus(job);
+  }
+
+  public RecordReader<LongWritable, Text> getRecordReader(
+      InputSplit genericSplit, JobConf job, Reporter reporter)
+      throws IOException {
+    reporter.setStatus(genericSplit.toString());
+    FileSplit split = (FileSplit) genericSplit;
+    Path file = split.getPath();
+    FileSystem fs = file.getFileSystem(job);
+    if (compressionCodecs.getCodec(file) != null
+        && BgzfLineRecordReader.isBgzf(fs, file)) {
+      return new HeaderSkippingRecordReader(
+          new BgzfLineRecordReader(job, split));
+    }
+    return new HeaderSkippingRecordReader(new LineRecordReader(job, split));
+  }
+
+  /**
+   * Passes on every line that does not start with '#'.
+   */
+  static class HeaderSkippingRecordReader
+      implements RecordReader<LongWritable, Text> {
+    private final RecordReader<LongWritable, Text> in;
+
+    HeaderSkippingRecordReader(RecordReader<LongWritable, Text> in) {
+      this.in = in;
+    }
+
+    public boolean next(LongWritable key, Text value) throws IOException {
+      while (in.next(key, value)) {
+        if (0 == value.getLength() || '#' != value.getBytes()[0]) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public LongWritable createKey() {
+      return in.createKey();
+    }
+
+    public Text createValue() {
+      return in.createValue();
+    }
+
+    public long getPos() throws IOException {
+      return in.getPos();
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+
+    public float getProgress() throws IOException {
+      return in.getProgress();
+    }
+  }
+}
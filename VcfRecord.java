@@ -0,0 +1,434 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * VcfRecord is a reusable, tab-delimited view over the bytes of one VCF line.
+ *
+ * Fields are located by offset rather than split into Strings so that a
+ * whole-genome VCF can be scanned without allocating per record.  A record
+ * either points at a caller's buffer (see parse) or owns a private copy of
+ * one (see copyFrom), which is how block state survives Text reuse.
+ **/
+
+final class VcfRecord {
+
+  // VCF Fields
+  // http://www.1000genomes.org/wiki/Analysis/Variant%20Call%20Format/vcf-variant-call-format-version-41
+  static final int CHROM = 0;
+  static final int POS = 1;
+  static final int ID = 2;
+  static final int REF = 3;
+  static final int ALT = 4;
+  static final int QUAL = 5;
+  static final int FILTER = 6;
+  static final int INFO = 7;
+  static final int FORMAT = 8;
+  static final int GENOTYPE = 9;
+
+  private static final String utf8 = "UTF-8";
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private byte[] bytes;
+  private int start;
+  private int length;
+  private boolean owned;
+
+  private int fieldCount;
+  private int[] fieldStarts = new int[16];
+  private int[] fieldEnds = new int[16];
+
+  private int infoValueStart;
+  private int infoValueEnd;
+  private int sampleValueStart;
+  private int sampleValueEnd;
+
+  /**
+   * Points this record at a line, trimming surrounding whitespace the way
+   * Python's str.strip() does.  The bytes are not copied.
+   */
+  void parse(byte[] buf, int offset, int len) {
+    int end = offset + len;
+    while (offset < end && isWhitespace(buf[offset])) {
+      offset++;
+    }
+    while (end > offset && isWhitespace(buf[end - 1])) {
+      end--;
+    }
+    bytes = buf;
+    start = offset;
+    length = end - offset;
+    owned = false;
+    split();
+  }
+
+  /**
+   * Makes this record a private copy of another one so that it stays valid
+   * after the other record's buffer is reused.
+   */
+  void copyFrom(VcfRecord other) {
+    if (!owned || bytes.length < other.length) {
+      bytes = new byte[Math.max(other.length, 256)];
+    }
+    System.arraycopy(other.bytes, other.start, bytes, 0, other.length);
+    start = 0;
+    length = other.length;
+    owned = true;
+    ensureFieldCapacity(other.fieldCount);
+    for (int i = 0; i < other.fieldCount; i++) {
+      fieldStarts[i] = other.fieldStarts[i] - other.start;
+      fieldEnds[i] = other.fieldEnds[i] - other.start;
+    }
+    fieldCount = other.fieldCount;
+  }
+
+  private void split() {
+    fieldCount = 0;
+    if (0 == length) {
+      return;
+    }
+    int end = start + length;
+    int fieldStart = start;
+    for (int i = start; i < end; i++) {
+      if ('\t' == bytes[i]) {
+        addField(fieldStart, i);
+        fieldStart = i + 1;
+      }
+    }
+    addField(fieldStart, end);
+  }
+
+  private void addField(int from, int to) {
+    ensureFieldCapacity(fieldCount + 1);
+    fieldStarts[fieldCount] = from;
+    fieldEnds[fieldCount] = to;
+    fieldCount++;
+  }
+
+  private void ensureFieldCapacity(int capacity) {
+    if (fieldStarts.length < capacity) {
+      int size = Math.max(capacity, fieldStarts.length * 2);
+      fieldStarts = Arrays.copyOf(fieldStarts, size);
+      fieldEnds = Arrays.copyOf(fieldEnds, size);
+    }
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return ' ' == b || '\t' == b || '\n' == b || '\r' == b
+        || 0x0b == b || 0x0c == b;
+  }
+
+  static byte[] bytesOf(String s) {
+    try {
+      return s.getBytes(utf8);
+    } catch (UnsupportedEncodingException uee) {
+      throw new IllegalArgumentException("can't find " + utf8 + " encoding");
+    }
+  }
+
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getStart() {
+    return start;
+  }
+
+  int getLength() {
+    return length;
+  }
+
+  boolean isBlank() {
+    return 0 == length;
+  }
+
+  boolean isHeader() {
+    return 0 < length && '#' == bytes[start];
+  }
+
+  int fieldCount() {
+    return fieldCount;
+  }
+
+  int fieldStart(int field) {
+    checkField(field);
+    return fieldStarts[field];
+  }
+
+  int fieldEnd(int field) {
+    checkField(field);
+    return fieldEnds[field];
+  }
+
+  int fieldLength(int field) {
+    checkField(field);
+    return fieldEnds[field] - fieldStarts[field];
+  }
+
+  private void checkField(int field) {
+    if (field >= fieldCount) {
+      throw new IllegalArgumentException("VCF record has " + fieldCount
+          + " fields, field " + field + " requested: " + toString());
+    }
+  }
+
+  boolean fieldEquals(int field, byte[] expected) {
+    return regionEquals(fieldStart(field), fieldEnd(field), expected);
+  }
+
+  boolean fieldContains(int field, byte[] needle) {
+    int from = fieldStart(field);
+    int last = fieldEnd(field) - needle.length;
+    for (int i = from; i <= last; i++) {
+      if (regionEquals(i, i + needle.length, needle)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean regionEquals(int from, int to, byte[] expected) {
+    if (to - from != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < expected.length; i++) {
+      if (bytes[from + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long longField(int field) throws IOException {
+    return parseLong(bytes, fieldStart(field), fieldEnd(field));
+  }
+
+  double doubleField(int field) throws IOException {
+    return parseDouble(bytes, fieldStart(field), fieldEnd(field));
+  }
+
+  /**
+   * Locates the value of an INFO key the way gvcf-mapper.py's info_to_dict
+   * does: items without exactly one '=' are ignored and the last
+   * occurrence of a key wins.
+   *
+   * @return whether the key was found; see infoValueStart/infoValueEnd
+   */
+  boolean findInfo(byte[] key) {
+    boolean found = false;
+    int end = fieldEnd(INFO);
+    int itemStart = fieldStart(INFO);
+    while (itemStart <= end) {
+      int itemEnd = itemStart;
+      int equals = -1;
+      int equalsCount = 0;
+      while (itemEnd < end && ';' != bytes[itemEnd]) {
+        if ('=' == bytes[itemEnd]) {
+          equals = itemEnd;
+          equalsCount++;
+        }
+        itemEnd++;
+      }
+      if (1 == equalsCount && regionEquals(itemStart, equals, key)) {
+        infoValueStart = equals + 1;
+        infoValueEnd = itemEnd;
+        found = true;
+      }
+      itemStart = itemEnd + 1;
+    }
+    return found;
+  }
+
+  int infoValueStart() {
+    return infoValueStart;
+  }
+
+  int infoValueEnd() {
+    return infoValueEnd;
+  }
+
+  boolean infoValueEquals(byte[] expected) {
+    return regionEquals(infoValueStart, infoValueEnd, expected);
+  }
+
+  /**
+   * Locates the first sample's value for a FORMAT key, e.g. its GT.
+   *
+   * @return whether the key and value were found; see
+   *     sampleValueStart/sampleValueEnd
+   */
+  boolean findSampleValue(byte[] key) {
+    if (fieldCount <= GENOTYPE) {
+      return false;
+    }
+    int index = 0;
+    int from = fieldStarts[FORMAT];
+    int end = fieldEnds[FORMAT];
+    while (from <= end && !regionEquals(from, subfieldEnd(from, end), key)) {
+      from = subfieldEnd(from, end) + 1;
+      index++;
+    }
+    if (from > end) {
+      return false;
+    }
+    from = fieldStarts[GENOTYPE];
+    end = fieldEnds[GENOTYPE];
+    for (int i = 0; i < index && from <= end; i++) {
+      from = subfieldEnd(from, end) + 1;
+    }
+    if (from > end) {
+      return false;
+    }
+    sampleValueStart = from;
+    sampleValueEnd = subfieldEnd(from, end);
+    return true;
+  }
+
+  private int subfieldEnd(int from, int end) {
+    while (from < end && ':' != bytes[from]) {
+      from++;
+    }
+    return from;
+  }
+
+  int sampleValueStart() {
+    return sampleValueStart;
+  }
+
+  int sampleValueEnd() {
+    return sampleValueEnd;
+  }
+
+  double infoDouble(byte[] key) throws IOException {
+    if (!findInfo(key)) {
+      throw new IOException("INFO key " + new String(key, utf8)
+          + " not found: " + toString());
+    }
+    return parseDouble(bytes, infoValueStart, infoValueEnd);
+  }
+
+  /**
+   * Parses a base 10 integer, accepting the same surrounding whitespace and
+   * sign that Python's int() does.
+   */
+  static long parseLong(byte[] buf, int from, int to) throws IOException {
+    int i = from;
+    int end = to;
+    while (i < end && isWhitespace(buf[i])) {
+      i++;
+    }
+    while (end > i && isWhitespace(buf[end - 1])) {
+      end--;
+    }
+    boolean negative = false;
+    if (i < end && ('+' == buf[i] || '-' == buf[i])) {
+      negative = '-' == buf[i];
+      i++;
+    }
+    if (i == end || end - i > 18) {
+      throw new NumberFormatException("invalid integer: "
+          + new String(buf, from, to - from, utf8));
+    }
+    long value = 0;
+    for (; i < end; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("invalid integer: "
+            + new String(buf, from, to - from, utf8));
+      }
+      value = value * 10 + digit;
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Parses a floating point number.  Plain decimals with at most 15
+   * significant digits are converted directly, which is exact because
+   * both the mantissa and the power of ten are representable doubles.
+   * Anything else falls back to the JDK parser.
+   */
+  static double parseDouble(byte[] buf, int from, int to) throws IOException {
+    int i = from;
+    boolean negative = false;
+    if (i < to && ('+' == buf[i] || '-' == buf[i])) {
+      negative = '-' == buf[i];
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = 0;
+    boolean seenPoint = false;
+    boolean seenDigit = false;
+    boolean simple = true;
+    for (; i < to && simple; i++) {
+      byte b = buf[i];
+      if ('0' <= b && b <= '9') {
+        seenDigit = true;
+        mantissa = mantissa * 10 + (b - '0');
+        if (0 != mantissa) {
+          digits++;
+        }
+        if (seenPoint) {
+          fractionDigits++;
+        }
+        simple = digits <= 15 && fractionDigits < POWERS_OF_TEN.length;
+      } else if ('.' == b && !seenPoint) {
+        seenPoint = true;
+      } else {
+        simple = false;
+      }
+    }
+    if (simple && seenDigit) {
+      double value = mantissa / POWERS_OF_TEN[fractionDigits];
+      return negative ? -value : value;
+    }
+    return parseDoubleSlow(new String(buf, from, to - from, utf8));
+  }
+
+  private static double parseDoubleSlow(String s) {
+    String t = s.trim().toLowerCase();
+    String unsigned = t.startsWith("+") || t.startsWith("-")
+        ? t.substring(1) : t;
+    if ("nan".equals(unsigned)) {
+      return Double.NaN;
+    }
+    if ("inf".equals(unsigned) || "infinity".equals(unsigned)) {
+      return t.startsWith("-")
+          ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    // Reject the forms Java accepts but Python's float() does not.
+    if (t.endsWith("d") || t.endsWith("f") || t.startsWith("0x")
+        || unsigned.startsWith("0x")) {
+      throw new NumberFormatException("invalid float: " + s);
+    }
+    return Double.parseDouble(t);
+  }
+
+  @Override
+  public String toString() {
+    try {
+      return new String(bytes, start, length, utf8);
+    } catch (UnsupportedEncodingException uee) {
+      throw new IllegalArgumentException("can't find " + utf8 + " encoding");
+    }
+  }
+}
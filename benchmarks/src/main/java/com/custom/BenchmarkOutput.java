@@ -0,0 +1,133 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileOutputCommitter;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+/**
+ * BenchmarkOutput holds what the benchmarks share: the synthetic records
+ * in each of the value types LineRecordWriter handles, a sink that
+ * discards what is written, and the configuration of a task writing to a
+ * directory of the local filesystem.
+ **/
+
+final class BenchmarkOutput {
+
+  /**
+   * The seed of the synthetic records, so that runs are comparable.
+   */
+  static final long SEED = 20140227L;
+
+  /**
+   * The number of distinct records cycled through, a power of two.
+   */
+  static final int RECORDS = 1 << 14;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private BenchmarkOutput() {
+  }
+
+  /**
+   * @return the synthetic records as the named type: text for Text, bytes
+   *     for BytesWritable, or string for String, which is written by way
+   *     of toString()
+   */
+  static Object[] values(String type) {
+    String[] records = SyntheticVcfGenerator.records(SEED, RECORDS);
+    Object[] values = new Object[records.length];
+    for (int i = 0; i < records.length; i++) {
+      if ("text".equals(type)) {
+        values[i] = new Text(records[i]);
+      } else if ("bytes".equals(type)) {
+        values[i] = new BytesWritable(records[i].getBytes(UTF8));
+      } else if ("string".equals(type)) {
+        values[i] = records[i];
+      } else {
+        throw new IllegalArgumentException("unknown value type " + type);
+      }
+    }
+    return values;
+  }
+
+  /**
+   * @return count sample names in the style of the VA data
+   */
+  static Text[] sampleKeys(int count) {
+    Text[] keys = new Text[count];
+    for (int i = 0; i < count; i++) {
+      keys[i] = new Text(String.format("LP%07d-DNA_%c%02d", 6000000 + i,
+          (char) ('A' + i / 12 % 8), 1 + i % 12));
+    }
+    return keys;
+  }
+
+  /**
+   * @return a new empty directory under java.io.tmpdir
+   */
+  static File newDirectory() throws IOException {
+    return Files.createTempDirectory("googva-benchmark").toFile();
+  }
+
+  static void delete(File directory) throws IOException {
+    FileUtil.fullyDelete(directory);
+  }
+
+  /**
+   * @return the configuration of the first map task of a job writing to
+   *     directory on the local filesystem, set up as a job would be
+   */
+  static JobConf newJob(File directory) throws IOException {
+    if (!new File(directory, FileOutputCommitter.TEMP_DIR_NAME).mkdir()) {
+      throw new IOException("could not set up " + directory);
+    }
+    JobConf job = new JobConf();
+    job.set("fs.default.name", "file:///");
+    job.set("mapred.job.tracker", "local");
+    job.set("mapred.task.id", "attempt_201402270000_0001_m_000000_0");
+    FileOutputFormat.setOutputPath(job, new Path(directory.toURI()));
+    return job;
+  }
+
+  /**
+   * Discards what is written, counting the bytes so that the writes cannot
+   * be optimized away.
+   */
+  static final class Sink extends OutputStream {
+    long bytes;
+
+    @Override
+    public void write(int b) {
+      bytes++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      bytes += len;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.BZip2Codec;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.io.compress.GzipCodec;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CodecBenchmark measures the writer of getBaseRecordWriter writing one
+ * key's records to the local filesystem, for each way the output can be
+ * compressed, and with and without ASYNC_OUTPUT, which does not apply to
+ * Parquet.  Snappy and LZO are left out as they need native libraries.
+ * The writer is closed at the end of each iteration, outside the
+ * measurement, and its metrics, including the compressed size, printed.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+  @Param({"none", "deflate", "gzip", "bzip2", "bgzf", "parquet"})
+  public String codec;
+
+  @Param({"false", "true"})
+  public boolean async;
+
+  private final CustomMultiOutputFormat<Text, Text> format =
+      new CustomMultiOutputFormat<Text, Text>();
+  private final Text key = BenchmarkOutput.sampleKeys(1)[0];
+  private Object[] values;
+  private File directory;
+  private JobConf job;
+  private RecordWriter<Text, Text> writer;
+  private int iteration;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    values = BenchmarkOutput.values("text");
+    directory = BenchmarkOutput.newDirectory();
+    job = BenchmarkOutput.newJob(directory);
+    job.setBoolean(CustomMultiOutputFormat.ASYNC_OUTPUT, async);
+    if ("bgzf".equals(codec)) {
+      job.setBoolean(CustomMultiOutputFormat.BGZF_OUTPUT, true);
+    } else if ("parquet".equals(codec)) {
+      job.setBoolean(CustomMultiOutputFormat.PARQUET_OUTPUT, true);
+    } else if (!"none".equals(codec)) {
+      FileOutputFormat.setCompressOutput(job, true);
+      FileOutputFormat.setOutputCompressorClass(job, codecClass());
+    }
+  }
+
+  private Class<? extends CompressionCodec> codecClass() {
+    if ("deflate".equals(codec)) {
+      return DefaultCodec.class;
+    } else if ("gzip".equals(codec)) {
+      return GzipCodec.class;
+    } else if ("bzip2".equals(codec)) {
+      return BZip2Codec.class;
+    }
+    throw new IllegalArgumentException("unknown codec " + codec);
+  }
+
+  @Setup(Level.Iteration)
+  public void open() throws IOException {
+    writer = format.getBaseRecordWriter(null, job,
+        key + "/part-" + iteration++, Reporter.NULL);
+  }
+
+  @TearDown(Level.Iteration)
+  public void close() throws IOException {
+    writer.close(Reporter.NULL);
+    System.out.println(codec + ": " + writer);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkOutput.delete(directory);
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    writer.write(key, (Text) values[next]);
+    next = (next + 1) & (BenchmarkOutput.RECORDS - 1);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import com.custom.CustomMultiOutputFormat.LineRecordWriter;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ContendedWriteBenchmark measures the synchronized LineRecordWriter.write
+ * with one thread, for the cost of the uncontended lock, and with several
+ * threads sharing a writer, as a multithreaded mapper would.  The thread
+ * count of contended can be changed with -t.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContendedWriteBenchmark {
+
+  /**
+   * The writer shared by all the threads.
+   */
+  @State(Scope.Benchmark)
+  public static class SharedWriter {
+    final Text key = BenchmarkOutput.sampleKeys(1)[0];
+    LineRecordWriter<Text, Object> writer;
+
+    @Setup
+    public void setUp() {
+      writer = new LineRecordWriter<Text, Object>(
+          new DataOutputStream(new BenchmarkOutput.Sink()));
+    }
+  }
+
+  /**
+   * The records each thread writes.
+   */
+  @State(Scope.Thread)
+  public static class Records {
+    Object[] values;
+    int next;
+
+    @Setup
+    public void setUp() {
+      values = BenchmarkOutput.values("text");
+    }
+
+    Object next() {
+      Object value = values[next];
+      next = (next + 1) & (BenchmarkOutput.RECORDS - 1);
+      return value;
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void uncontended(SharedWriter shared, Records records)
+      throws IOException {
+    shared.writer.write(shared.key, records.next());
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void contended(SharedWriter shared, Records records)
+      throws IOException {
+    shared.writer.write(shared.key, records.next());
+  }
+}
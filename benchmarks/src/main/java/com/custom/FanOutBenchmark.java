@@ -0,0 +1,106 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FanOutBenchmark measures the whole record writer of
+ * CustomMultiOutputFormat, from the lookup of each key's file to the
+ * write, spreading the records over from one to ten thousand keys on the
+ * local filesystem.  Keys are taken in turn, the worst case for the pool
+ * of open writers.  The writers are closed at the end of each iteration,
+ * outside the measurement.  Ten thousand keys need as many open files;
+ * set maxOpenWriters, e.g. -p maxOpenWriters=1000, to measure the pool
+ * evicting instead.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+  @Param({"1", "10", "100", "1000", "10000"})
+  public int keys;
+
+  @Param({"0"})
+  public int maxOpenWriters;
+
+  private final CustomMultiOutputFormat<Text, Text> format =
+      new CustomMultiOutputFormat<Text, Text>();
+  private Text[] sampleKeys;
+  private Object[] values;
+  private File directory;
+  private JobConf job;
+  private RecordWriter<Text, Text> writer;
+  private int iteration;
+  private int nextKey;
+  private int nextValue;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    sampleKeys = BenchmarkOutput.sampleKeys(keys);
+    values = BenchmarkOutput.values("text");
+    directory = BenchmarkOutput.newDirectory();
+    job = BenchmarkOutput.newJob(directory);
+    job.setInt(CustomMultiOutputFormat.MAX_OPEN_WRITERS, maxOpenWriters);
+  }
+
+  @Setup(Level.Iteration)
+  public void open() throws IOException {
+    writer = format.getRecordWriter(null, job, "part-" + iteration++,
+        Reporter.NULL);
+  }
+
+  @TearDown(Level.Iteration)
+  public void close() throws IOException {
+    writer.close(Reporter.NULL);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    BenchmarkOutput.delete(directory);
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    writer.write(sampleKeys[nextKey], (Text) values[nextValue]);
+    nextKey = (nextKey + 1) % keys;
+    nextValue = (nextValue + 1) & (BenchmarkOutput.RECORDS - 1);
+  }
+}
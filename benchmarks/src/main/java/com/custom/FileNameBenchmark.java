@@ -0,0 +1,79 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileNameBenchmark measures generateFileNameForKeyValue, which the
+ * output format calls for every record and which builds a Path, parsing
+ * and normalizing the key, only to turn it back into a string.  The
+ * concatenate benchmark is the string the Path comes to, built directly,
+ * as a baseline.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FileNameBenchmark {
+
+  private static final String LEAF = "part-00000";
+
+  @Param({"1", "100", "10000"})
+  public int keys;
+
+  private final CustomMultiOutputFormat<Text, Text> format =
+      new CustomMultiOutputFormat<Text, Text>();
+  private final Text value = new Text(
+      SyntheticVcfGenerator.records(BenchmarkOutput.SEED, 1)[0]);
+  private Text[] sampleKeys;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    sampleKeys = BenchmarkOutput.sampleKeys(keys);
+  }
+
+  @Benchmark
+  public String generateFileName() {
+    String name =
+        format.generateFileNameForKeyValue(sampleKeys[next], value, LEAF);
+    next = (next + 1) % keys;
+    return name;
+  }
+
+  @Benchmark
+  public String concatenate() {
+    String name = sampleKeys[next].toString() + "/" + LEAF;
+    next = (next + 1) % keys;
+    return name;
+  }
+}
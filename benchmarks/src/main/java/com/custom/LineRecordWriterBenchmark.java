@@ -0,0 +1,71 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import com.custom.CustomMultiOutputFormat.LineRecordWriter;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LineRecordWriterBenchmark measures LineRecordWriter.write alone, for
+ * each of the value types it handles, writing to a sink that discards the
+ * output.  A string value goes through toString() and getBytes(), which
+ * allocates per record; run with -prof gc to see the allocation rate.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LineRecordWriterBenchmark {
+
+  @Param({"text", "bytes", "string"})
+  public String valueType;
+
+  private final Text key = BenchmarkOutput.sampleKeys(1)[0];
+  private Object[] values;
+  private LineRecordWriter<Text, Object> writer;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    values = BenchmarkOutput.values(valueType);
+    writer = new LineRecordWriter<Text, Object>(
+        new DataOutputStream(new BenchmarkOutput.Sink()));
+  }
+
+  @Benchmark
+  public void write() throws IOException {
+    writer.write(key, values[next]);
+    next = (next + 1) & (BenchmarkOutput.RECORDS - 1);
+  }
+}
@@ -0,0 +1,243 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SyntheticVcfGenerator writes a reproducible stand-in for a whole-genome
+ * single-sample VCF, for benchmarks and local runs:
+ *   java -cp benchmarks.jar com.custom.SyntheticVcfGenerator \
+ *   <seed> <records> <output.vcf[.gz]> [sample]
+ *
+ * Like the VA data, nearly every position is a reference call, one record
+ * per position, and every record has DP, MQ and MQ0 in INFO.  Coverage and mapping quality
+ * drift from region to region, with stretches of poorly mapped positions
+ * where MQ0 is non-zero and of no-calls where there is no coverage.  About
+ * one position in a thousand is a SNP, and one in seven thousand an indel.
+ * The contigs and their lengths are those of the dataset header, walked in
+ * order, so the records are sorted.  The same seed always gives the same
+ * records.
+ **/
+
+final class SyntheticVcfGenerator {
+
+  private static final Pattern CONTIG_PATTERN = Pattern.compile(
+      "^##contig=<ID=([^,>]+),length=(\\d+)", Pattern.MULTILINE);
+
+  private static final char[] BASES = {'A', 'C', 'G', 'T'};
+
+  private static final double SNP_RATE = 1.0 / 1000;
+  private static final double INDEL_RATE = 1.0 / 7000;
+  private static final double REGION_CHANGE_RATE = 1.0 / 500;
+
+  private final Random random;
+  private final List<String> contigs = new ArrayList<String>();
+  private final List<Long> lengths = new ArrayList<Long>();
+  private final StringBuilder line = new StringBuilder(256);
+
+  private int contig;
+  private long position;
+
+  // The state of the current region.
+  private int depth;
+  private int mappingQuality;
+  private int mappingQualityZero;
+
+  SyntheticVcfGenerator(long seed) {
+    random = new Random(seed);
+    Matcher match = CONTIG_PATTERN.matcher(
+        CustomMultiOutputFormat.DATASET_HEADER);
+    while (match.find()) {
+      contigs.add(match.group(1));
+      lengths.add(Long.parseLong(match.group(2)));
+    }
+    changeRegion();
+  }
+
+  /**
+   * @return the records of a generator with the given seed
+   */
+  static String[] records(long seed, int count) {
+    SyntheticVcfGenerator generator = new SyntheticVcfGenerator(seed);
+    String[] records = new String[count];
+    for (int i = 0; i < count; i++) {
+      records[i] = generator.next();
+    }
+    return records;
+  }
+
+  /**
+   * @return the header of a VCF of the named sample
+   */
+  static String header(String sample) {
+    return CustomMultiOutputFormat.DATASET_HEADER
+        + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\t"
+        + sample + "\n";
+  }
+
+  /**
+   * @return the next record, without a newline
+   */
+  String next() {
+    position++;
+    if (position > lengths.get(contig)) {
+      // On to the next contig, or back to the first after the last.
+      contig = (contig + 1) % contigs.size();
+      position = 1;
+    }
+    if (random.nextDouble() < REGION_CHANGE_RATE) {
+      changeRegion();
+    }
+
+    char ref = BASES[random.nextInt(BASES.length)];
+    line.setLength(0);
+    line.append(contigs.get(contig)).append('\t').append(position)
+        .append("\t.\t");
+    double variant = random.nextDouble();
+    if (0 < depth && variant < SNP_RATE) {
+      appendVariant(String.valueOf(ref),
+          String.valueOf(BASES[(indexOf(ref) + 1 + random.nextInt(3)) % 4]));
+    } else if (0 < depth && variant < SNP_RATE + INDEL_RATE) {
+      StringBuilder longer = new StringBuilder().append(ref);
+      for (int i = 1 + random.nextInt(4); 0 < i; i--) {
+        longer.append(BASES[random.nextInt(BASES.length)]);
+      }
+      if (random.nextBoolean()) {
+        appendVariant(String.valueOf(ref), longer.toString());
+      } else {
+        appendVariant(longer.toString(), String.valueOf(ref));
+        // The deleted positions get no records of their own.
+        position = Math.min(position + longer.length() - 1,
+            lengths.get(contig));
+      }
+    } else {
+      appendReference(ref);
+    }
+    return line.toString();
+  }
+
+  private void appendReference(char ref) {
+    int dp = sampleDepth();
+    line.append(ref).append("\t.\t");
+    if (0 == dp) {
+      line.append(".\t.\tDP=0;MQ=0.00;MQ0=0\tGT:DP\t./.:0");
+      return;
+    }
+    line.append(Math.min(99, 3 * dp)).append("\t.\tDP=").append(dp)
+        .append(";MQ=").append(sampleMappingQuality())
+        .append(";MQ0=").append(mappingQualityZero)
+        .append("\tGT:DP\t0/0:").append(dp);
+  }
+
+  private void appendVariant(String ref, String alt) {
+    int dp = Math.max(1, sampleDepth());
+    boolean homozygous = random.nextDouble() < 0.4;
+    int altDepth = homozygous ? dp : dp / 2;
+    double qual = 30 + random.nextDouble() * 30 * dp;
+    line.append(ref).append('\t').append(alt).append('\t')
+        .append(String.format(Locale.ROOT, "%.2f", qual)).append('\t')
+        .append(qual < 50 ? "LowQual" : "PASS")
+        .append("\tAC=").append(homozygous ? 2 : 1)
+        .append(";AF=").append(homozygous ? "1.00" : "0.500")
+        .append(";AN=2;DP=").append(dp)
+        .append(";MQ=").append(sampleMappingQuality())
+        .append(";MQ0=").append(mappingQualityZero)
+        .append("\tGT:AD:DP:GQ\t").append(homozygous ? "1/1:" : "0/1:")
+        .append(dp - altDepth).append(',').append(altDepth).append(':')
+        .append(dp).append(':').append(Math.min(99, (int) qual / 3));
+  }
+
+  private void changeRegion() {
+    double kind = random.nextDouble();
+    if (kind < 0.02) {
+      // Not covered, e.g. a gap in the assembly.
+      depth = 0;
+      mappingQuality = 0;
+      mappingQualityZero = 0;
+    } else if (kind < 0.1) {
+      // Poorly mapped, e.g. a segmental duplication.
+      depth = 10 + random.nextInt(40);
+      mappingQuality = 20 + random.nextInt(30);
+      mappingQualityZero = 1 + random.nextInt(depth / 2);
+    } else {
+      depth = 25 + random.nextInt(20);
+      mappingQuality = 60;
+      mappingQualityZero = 0;
+    }
+  }
+
+  private int sampleDepth() {
+    if (0 == depth) {
+      return 0;
+    }
+    return Math.max(1, depth + (int) Math.round(random.nextGaussian() * 4));
+  }
+
+  private String sampleMappingQuality() {
+    if (60 == mappingQuality) {
+      return "60.00";
+    }
+    return String.format(Locale.ROOT, "%.2f",
+        mappingQuality + random.nextDouble() * 5);
+  }
+
+  private static int indexOf(char base) {
+    for (int i = 0; i < BASES.length; i++) {
+      if (base == BASES[i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3 || args.length > 4) {
+      System.err.println("Usage: SyntheticVcfGenerator <seed> <records> "
+          + "<output.vcf[.gz]> [sample]");
+      System.exit(-1);
+    }
+    SyntheticVcfGenerator generator =
+        new SyntheticVcfGenerator(Long.parseLong(args[0]));
+    long records = Long.parseLong(args[1]);
+    OutputStream out =
+        new BufferedOutputStream(new FileOutputStream(args[2]), 1 << 16);
+    if (args[2].endsWith(".gz")) {
+      out = new GZIPOutputStream(out, 1 << 16);
+    }
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+    try {
+      writer.write(header(4 == args.length ? args[3] : "SYNTHETIC"));
+      for (long i = 0; i < records; i++) {
+        writer.write(generator.next());
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+  }
+}
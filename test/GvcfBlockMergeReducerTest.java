@@ -0,0 +1,249 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that SortedGvcfMapper and GvcfBlockMergeReducer give the output of
+ * a single pass over gvcf.vcf however the file is split: at every line, at
+ * every pair of lines, which cuts blocks at their starts, ends and middles,
+ * and with every line in a split of its own.
+ **/
+
+public class GvcfBlockMergeReducerTest {
+
+  private static final String PATH = "/data/LP6005038-DNA_A01/gvcf.vcf";
+
+  private byte[] bytes;
+  // The offset and length of each record line, header lines excluded.
+  private final List<int[]> lines = new ArrayList<int[]>();
+  private Map<String, String> unsplit;
+
+  @Before
+  public void setUp() throws IOException {
+    bytes = readResource("gvcf.vcf");
+    int start = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if ('\n' == bytes[i]) {
+        if ('#' != bytes[start]) {
+          lines.add(new int[] {start, i - start});
+        }
+        start = i + 1;
+      }
+    }
+    unsplit = runUnsplit();
+  }
+
+  @Test
+  public void testOneSplit() throws IOException {
+    assertEquals(unsplit, runSplits());
+  }
+
+  @Test
+  public void testCutAtEveryLine() throws IOException {
+    for (int cut = 1; cut < lines.size(); cut++) {
+      assertEquals("cut at " + cut, unsplit, runSplits(cut));
+    }
+  }
+
+  @Test
+  public void testCutAtEveryPairOfLines() throws IOException {
+    for (int first = 1; first < lines.size(); first++) {
+      for (int second = first + 1; second < lines.size(); second++) {
+        assertEquals("cut at " + first + " and " + second, unsplit,
+            runSplits(first, second));
+      }
+    }
+  }
+
+  @Test
+  public void testSplitPerLine() throws IOException {
+    int[] cuts = new int[lines.size() - 1];
+    for (int i = 0; i < cuts.length; i++) {
+      cuts[i] = i + 1;
+    }
+    assertEquals(unsplit, runSplits(cuts));
+  }
+
+  /**
+   * @return the output of GvcfBlockCompressor over the whole file, each
+   *     key's lines joined
+   */
+  private Map<String, String> runUnsplit() throws IOException {
+    final Map<String, String> output = new TreeMap<String, String>();
+    OutputCollector<Text, Text> collector = new OutputCollector<Text, Text>() {
+      public void collect(Text key, Text value) {
+        append(output, key.toString(), value);
+      }
+    };
+    GvcfBlockCompressor compressor = new GvcfBlockCompressor(
+        GvcfMapper.sampleIdForPath(PATH));
+    for (int[] line : lines) {
+      compressor.process(bytes, line[0], line[1], collector);
+    }
+    compressor.finish(collector);
+    return output;
+  }
+
+  /**
+   * Maps the file in splits that start at the given lines, sorts the map
+   * output as the shuffle does and reduces each sample.
+   *
+   * @return the reduce output, each key's lines joined
+   */
+  private Map<String, String> runSplits(int... cuts) throws IOException {
+    final List<SamplePositionKey> keys = new ArrayList<SamplePositionKey>();
+    final List<Text> values = new ArrayList<Text>();
+    OutputCollector<SamplePositionKey, Text> mapOutput =
+        new OutputCollector<SamplePositionKey, Text>() {
+          public void collect(SamplePositionKey key, Text value) {
+            SamplePositionKey copy = new SamplePositionKey();
+            copy.set(key.getSample(), key.getContig(), key.getPosition(),
+                key.getOrder());
+            keys.add(copy);
+            values.add(new Text(value));
+          }
+        };
+    int[] starts = new int[cuts.length + 2];
+    System.arraycopy(cuts, 0, starts, 1, cuts.length);
+    starts[starts.length - 1] = lines.size();
+    for (int i = 0; i + 1 < starts.length; i++) {
+      JobConf job = new JobConf(false);
+      job.set(GvcfMapper.INPUT_FILE_KEY, PATH);
+      job.setLong(SortedGvcfMapper.INPUT_START_KEY,
+          0 == i ? 0 : lines.get(starts[i])[0]);
+      SortedGvcfMapper mapper = new SortedGvcfMapper();
+      mapper.configure(job);
+      mapper.run(new LineReader(starts[i], starts[i + 1]), mapOutput,
+          Reporter.NULL);
+    }
+
+    Integer[] sorted = new Integer[keys.size()];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return keys.get(a).compareTo(keys.get(b));
+      }
+    });
+
+    final Map<String, String> output = new TreeMap<String, String>();
+    OutputCollector<SamplePositionKey, Text> reduceOutput =
+        new OutputCollector<SamplePositionKey, Text>() {
+          public void collect(SamplePositionKey key, Text value) {
+            append(output, key.toString(), value);
+          }
+        };
+    GvcfBlockMergeReducer reducer = new GvcfBlockMergeReducer();
+    for (int i = 0; i < sorted.length;) {
+      SamplePositionKey key = keys.get(sorted[i]);
+      List<Text> group = new ArrayList<Text>();
+      while (i < sorted.length
+          && key.getSample().equals(keys.get(sorted[i]).getSample())) {
+        group.add(values.get(sorted[i++]));
+      }
+      reducer.reduce(key, group.iterator(), reduceOutput, Reporter.NULL);
+    }
+    return output;
+  }
+
+  private static void append(Map<String, String> output, String key,
+      Text value) {
+    String lines = output.get(key);
+    output.put(key, (lines == null ? "" : lines) + value + "\n");
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    InputStream in =
+        GvcfBlockMergeReducerTest.class.getClassLoader()
+            .getResourceAsStream(name);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int n; 0 < (n = in.read(buffer));) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads a range of the record lines, keyed by their offset in the file
+   * as VcfInputFormat keys them.
+   */
+  private class LineReader implements RecordReader<LongWritable, Text> {
+    private final int start;
+    private final int end;
+    private int line;
+
+    LineReader(int start, int end) {
+      this.start = start;
+      this.end = end;
+      this.line = start;
+    }
+
+    public boolean next(LongWritable key, Text value) {
+      if (end == line) {
+        return false;
+      }
+      int[] range = lines.get(line++);
+      key.set(range[0]);
+      value.set(bytes, range[0], range[1]);
+      return true;
+    }
+
+    public LongWritable createKey() {
+      return new LongWritable();
+    }
+
+    public Text createValue() {
+      return new Text();
+    }
+
+    public long getPos() {
+      return line;
+    }
+
+    public void close() {
+    }
+
+    public float getProgress() {
+      return (line - start) / (float) Math.max(1, end - start);
+    }
+  }
+}
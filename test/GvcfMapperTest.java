@@ -0,0 +1,85 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks GvcfMapper against the output of gvcf-mapper.py.
+ *
+ * gvcf-mapper.out was written by the script, run on gvcf.vcf at a path
+ * naming the sample:
+ *   python gvcf-mapper.py /data/LP6005038-DNA_A01/gvcf.vcf
+ * The fixture has gaps in ref and no-call blocks, filtered variants, an
+ * END= and an INFO flag, and lines with whitespace that the script strips.
+ **/
+
+public class GvcfMapperTest {
+
+  private static final String PATH = "/data/LP6005038-DNA_A01/gvcf.vcf";
+
+  @Test
+  public void testMatchesScript() throws IOException {
+    final StringBuilder output = new StringBuilder();
+    OutputCollector<Text, Text> collector = new OutputCollector<Text, Text>() {
+      public void collect(Text key, Text value) {
+        output.append(key).append('\t').append(value).append('\n');
+      }
+    };
+    JobConf job = new JobConf(false);
+    job.set(GvcfMapper.INPUT_FILE_KEY, PATH);
+    GvcfMapper mapper = new GvcfMapper();
+    mapper.configure(job);
+    byte[] bytes = readResource("gvcf.vcf");
+    int start = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if ('\n' == bytes[i]) {
+        Text line = new Text();
+        line.set(bytes, start, i - start);
+        mapper.map(null, line, collector, Reporter.NULL);
+        start = i + 1;
+      }
+    }
+    mapper.close();
+
+    assertEquals(Text.decode(readResource("gvcf-mapper.out")),
+        output.toString());
+  }
+
+  private static byte[] readResource(String name) throws IOException {
+    InputStream in =
+        GvcfMapperTest.class.getClassLoader().getResourceAsStream(name);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int n; 0 < (n = in.read(buffer));) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,329 @@
+/*
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.custom;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Writes records through the BGZF writer of CustomMultiOutputFormat, with
+ * an index, reads them back with BgzfLineRecordReader and answers region
+ * queries from the .tbi the way tabix does.
+ **/
+
+public class TabixIndexerTest {
+
+  private static final String SAMPLE = "LP6005038-DNA_A01";
+
+  private File dir;
+  private Path file;
+  private final List<String> lines = new ArrayList<String>();
+  // Each record's contig, zero based start and end, by line.
+  private final Map<Integer, Object[]> records =
+      new HashMap<Integer, Object[]>();
+
+  // The virtual offset of each line, and the lines, as read back.
+  private long[] offsets;
+  private final List<String> readBack = new ArrayList<String>();
+
+  @Before
+  public void setUp() throws IOException {
+    dir = new File(System.getProperty("java.io.tmpdir"),
+        "TabixIndexerTest-" + System.nanoTime());
+    assertTrue(dir.mkdirs());
+    file = new Path(dir.getAbsolutePath(), SAMPLE + ".gz");
+
+    for (String line : CustomMultiOutputFormat.DATASET_HEADER.split("\n")) {
+      lines.add(line);
+    }
+    lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\t"
+        + SAMPLE);
+    // Ref blocks whose ENDs reach into the next 16KB window and beyond the
+    // 128KB bins, among single position records.
+    for (int i = 0; i < 6000; i++) {
+      long pos = 1 + 37L * i;
+      long end = 0 == i % 500 ? pos + 200000 : 0 == i % 50 ? pos + 20000 : 0;
+      addRecord("chr1", pos, end);
+    }
+    for (int i = 0; i < 2000; i++) {
+      addRecord("chr2", 1000 + 101L * i, 0 == i % 100 ? 1000 + 101L * i : 0);
+    }
+
+    JobConf job = new JobConf();
+    job.setBoolean(CustomMultiOutputFormat.TABIX_INDEX, true);
+    job.setInt(CustomMultiOutputFormat.BGZF_THREADS, 2);
+    RecordWriter<Text, Text> writer = CustomMultiOutputFormat
+        .<Text, Text>newBgzfRecordWriter(job, file, Reporter.NULL, "\t");
+    Text key = new Text(SAMPLE);
+    for (String line : lines) {
+      if ('#' != line.charAt(0)) {
+        writer.write(key, new Text(line));
+      }
+    }
+    writer.close(Reporter.NULL);
+
+    BgzfLineRecordReader reader = new BgzfLineRecordReader(job,
+        new FileSplit(file, 0, new File(file.toString()).length(),
+            (String[]) null));
+    LongWritable offset = reader.createKey();
+    Text line = reader.createValue();
+    offsets = new long[lines.size()];
+    for (int i = 0; reader.next(offset, line); i++) {
+      if (i < offsets.length) {
+        offsets[i] = offset.get();
+      }
+      readBack.add(line.toString());
+    }
+    reader.close();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtil.fullyDelete(dir);
+  }
+
+  private void addRecord(String contig, long pos, long end) {
+    String info = 0 == end ? "DP=10;MQ=60;MQ0=0" : "END=" + end;
+    records.put(lines.size(), new Object[] {
+        contig, pos - 1, Math.max(pos, end)});
+    lines.add(contig + "\t" + pos + "\t.\tA\t.\t50\t.\t" + info
+        + "\tGT:DP\t0/0:10");
+  }
+
+  @Test
+  public void testReadBack() throws IOException {
+    assertEquals(lines, readBack);
+
+    // Each line's key is its virtual offset: the start of its block in the
+    // file and its position in the block's uncompressed data.
+    long[] blockStarts = uncompressedBlockStarts(readFile(file.toString()));
+    int blocks = 0;
+    for (long start : blockStarts) {
+      blocks += 0 <= start ? 1 : 0;
+    }
+    assertTrue(blocks + " blocks", 4 < blocks);
+    long position = 0;
+    for (int i = 0; i < lines.size(); i++) {
+      assertEquals("line " + i, position, uncompressed(blockStarts,
+          offsets[i]));
+      position += lines.get(i).length() + 1;
+    }
+  }
+
+  @Test
+  public void testReg2bin() {
+    assertEquals(4681, TabixIndexer.reg2bin(0, 1));
+    assertEquals(4681 + 1, TabixIndexer.reg2bin(1 << 14, (1 << 14) + 1));
+    assertEquals(585, TabixIndexer.reg2bin(0, (1 << 14) + 1));
+    assertEquals(73, TabixIndexer.reg2bin(0, (1 << 17) + 1));
+    assertEquals(9, TabixIndexer.reg2bin(0, (1 << 20) + 1));
+    assertEquals(1, TabixIndexer.reg2bin(0, (1 << 23) + 1));
+    assertEquals(0, TabixIndexer.reg2bin(0, (1 << 26) + 1));
+  }
+
+  @Test
+  public void testRegionQueries() throws IOException {
+    ByteBuffer index = ByteBuffer.wrap(gunzip(file.toString() + ".tbi"))
+        .order(ByteOrder.LITTLE_ENDIAN);
+    assertEquals('T' | 'B' << 8 | 'I' << 16 | 1 << 24, index.getInt());
+    int references = index.getInt();
+    assertEquals(2, references);
+    assertEquals(2, index.getInt());  // VCF
+    assertEquals(1, index.getInt());
+    assertEquals(2, index.getInt());
+    assertEquals(0, index.getInt());
+    assertEquals('#', index.getInt());
+    assertEquals(0, index.getInt());
+    byte[] names = new byte[index.getInt()];
+    index.get(names);
+    assertEquals("chr1\0chr2\0", new String(names, "UTF-8"));
+
+    String[] contigs = {"chr1", "chr2"};
+    for (String contig : contigs) {
+      Map<Integer, long[]> bins = new HashMap<Integer, long[]>();
+      for (int n = index.getInt(); 0 < n; n--) {
+        int bin = index.getInt();
+        long[] chunks = new long[2 * index.getInt()];
+        for (int i = 0; i < chunks.length; i++) {
+          chunks[i] = index.getLong();
+        }
+        bins.put(bin, chunks);
+      }
+      long[] linear = new long[index.getInt()];
+      for (int i = 0; i < linear.length; i++) {
+        linear[i] = index.getLong();
+      }
+
+      long[][] queries = {
+          {0, 1}, {0, 40000}, {16383, 16385}, {100000, 100001},
+          {150000, 160000}, {180000, 260000}, {221000, 400000},
+          {1000, 1001}, {50000, 70000}, {0, 1 << 29}
+      };
+      for (long[] query : queries) {
+        assertEquals(contig + ":" + query[0] + "-" + query[1],
+            scan(contig, query[0], query[1]),
+            query(bins, linear, query[0], query[1]));
+      }
+    }
+    assertEquals(0, index.getLong());  // unplaced records
+    assertEquals(0, index.remaining());
+  }
+
+  /**
+   * @return the lines of records overlapping [beg, end) on contig, found by
+   *     reading every record
+   */
+  private List<String> scan(String contig, long beg, long end) {
+    List<String> found = new ArrayList<String>();
+    for (int i = 0; i < lines.size(); i++) {
+      Object[] record = records.get(i);
+      if (record != null && contig.equals(record[0])
+          && (Long) record[1] < end && (Long) record[2] > beg) {
+        found.add(lines.get(i));
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the lines of records overlapping [beg, end), found by reading
+   *     only the chunks that the index gives for the region
+   */
+  private List<String> query(Map<Integer, long[]> bins, long[] linear,
+      long beg, long end) {
+    int window = (int) (beg >> 14);
+    long minOffset = window < linear.length ? linear[window]
+        : linear[linear.length - 1];
+    boolean[] read = new boolean[lines.size()];
+    for (int bin : reg2bins(beg, end)) {
+      long[] chunks = bins.get(bin);
+      if (chunks == null) {
+        continue;
+      }
+      for (int i = 0; i < chunks.length; i += 2) {
+        if (chunks[i + 1] <= minOffset) {
+          continue;
+        }
+        int line = Arrays.binarySearch(offsets, chunks[i]);
+        assertTrue("chunk starts a line", 0 <= line);
+        for (; line < offsets.length && offsets[line] < chunks[i + 1];
+            line++) {
+          read[line] = true;
+        }
+      }
+    }
+    List<String> found = new ArrayList<String>();
+    for (int i = 0; i < read.length; i++) {
+      Object[] record = records.get(i);
+      if (read[i] && (Long) record[1] < end && (Long) record[2] > beg) {
+        found.add(lines.get(i));
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the bins that may hold records overlapping [beg, end), as
+   *     listed in the tabix specification
+   */
+  private static List<Integer> reg2bins(long beg, long end) {
+    List<Integer> bins = new ArrayList<Integer>();
+    end = Math.min(end, 1 << 29) - 1;
+    bins.add(0);
+    int[] firsts = {1, 9, 73, 585, 4681};
+    int[] shifts = {26, 23, 20, 17, 14};
+    for (int level = 0; level < firsts.length; level++) {
+      for (long k = firsts[level] + (beg >> shifts[level]);
+          k <= firsts[level] + (end >> shifts[level]); k++) {
+        bins.add((int) k);
+      }
+    }
+    return bins;
+  }
+
+  /**
+   * @return the uncompressed position of the start of each block, indexed
+   *     by the block's offset in the file
+   */
+  private static long[] uncompressedBlockStarts(byte[] data) {
+    long[] starts = new long[data.length];
+    Arrays.fill(starts, -1);
+    long position = 0;
+    for (int offset = 0; offset < data.length;) {
+      ByteBuffer block = ByteBuffer.wrap(data, offset, data.length - offset)
+          .order(ByteOrder.LITTLE_ENDIAN);
+      assertEquals(0x1f, block.get(offset) & 0xff);
+      assertEquals(0x8b, block.get(offset + 1) & 0xff);
+      int size = (block.getShort(offset + 16) & 0xffff) + 1;
+      starts[offset] = position;
+      position += block.getInt(offset + size - 4) & 0xffffffffL;
+      offset += size;
+    }
+    return starts;
+  }
+
+  private static long uncompressed(long[] blockStarts, long virtualOffset) {
+    long start = blockStarts[(int) (virtualOffset >>> 16)];
+    assertTrue("offset of a block", 0 <= start);
+    return start + (virtualOffset & 0xffff);
+  }
+
+  private static byte[] gunzip(String name) throws IOException {
+    return readAll(new GZIPInputStream(new FileInputStream(name)));
+  }
+
+  private static byte[] readFile(String name) throws IOException {
+    return readAll(new FileInputStream(name));
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int n; 0 < (n = in.read(buffer));) {
+        out.write(buffer, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}